@@ -1,51 +1,352 @@
 package com.cleaner.djuav.controller;
 
+import com.cleaner.djuav.domain.KmzBatchParseReq;
+import com.cleaner.djuav.domain.KmzBuildVO;
 import com.cleaner.djuav.domain.KmzInfoVO;
+import com.cleaner.djuav.domain.KmzParseCacheEntryVO;
+import com.cleaner.djuav.domain.KmzParseCacheStatsVO;
+import com.cleaner.djuav.domain.ScratchUsageVO;
 import com.cleaner.djuav.domain.UavRouteReq;
+import com.cleaner.djuav.domain.WaypointPatchReq;
 import com.cleaner.djuav.service.UavRouteService;
+import com.cleaner.djuav.util.KmzBatchParser;
+import com.cleaner.djuav.util.RouteFileUtils;
+import com.cleaner.djuav.util.kml.KmzCompression;
+import com.cleaner.djuav.util.kml.KmzParseScope;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tomcat.util.http.fileupload.FileItemIterator;
+import org.apache.tomcat.util.http.fileupload.FileItemStream;
+import org.apache.tomcat.util.http.fileupload.FileUpload;
+import org.apache.tomcat.util.http.fileupload.FileUploadException;
+import org.apache.tomcat.util.http.fileupload.servlet.ServletRequestContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
 
 @RestController
 @Tag(name = "航线生成")
 public class UavRouteController {
 
+    /**
+     * kmz 文件类型
+     */
+    private static final String KMZ_CONTENT_TYPE = "application/vnd.google-earth.kmz";
+
+    /**
+     * 生成并保存kmz文件时返回生成编号的响应头
+     */
+    private static final String BUILD_ID_HEADER = "X-Build-Id";
+
+    /**
+     * zip 文件类型
+     */
+    private static final String ZIP_CONTENT_TYPE = "application/zip";
+
+    /**
+     * NDJSON 响应类型，每行一个 JSON 对象
+     */
+    private static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    /**
+     * 上传请求中 multipart 部分数量上限（文件及表单字段）
+     */
+    private static final long FILE_COUNT_MAX = 10;
+
     @Resource
     private UavRouteService routeService;
 
+    @Resource
+    private RouteFileUtils routeFileUtils;
+
+    /**
+     * 上传 kmz 文件的大小上限
+     */
+    @Value("${wayline-upload-max-size:512MB}")
+    private DataSize uploadMaxSize;
+
+    /**
+     * 批量上传的文件数量上限
+     */
+    @Value("${wayline-batch-upload-max-count:1000}")
+    private long batchFileCountMax;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
     /**
      * 编辑kmz文件
+     *
+     * @return 新 kmz 文件
      */
     @PostMapping("/updateKmz")
     @Operation(summary = "编辑kmz文件")
-    public void updateKmz(@RequestBody UavRouteReq uavRouteReq) {
-        this.routeService.updateKmz(uavRouteReq);
+    public KmzBuildVO updateKmz(@RequestBody UavRouteReq uavRouteReq) throws IOException {
+        return this.routeService.updateKmz(uavRouteReq);
+    }
+
+    /**
+     * 编辑航点：按顺序插入、删除、移动、修改航点
+     *
+     * @return 新 kmz 文件
+     */
+    @PostMapping("/patchKmz")
+    @Operation(summary = "编辑航点")
+    public KmzBuildVO patchKmz(@RequestBody WaypointPatchReq waypointPatchReq) throws IOException {
+        return this.routeService.patchWaypoints(waypointPatchReq);
     }
 
     /**
      * 生成kmz文件
+     *
+     * @return 生成的 kmz 文件，可按 buildId 下载
      */
     @PostMapping("/buildKmz")
     @Operation(summary = "生成kmz文件")
-    public void buildKmz(@RequestBody UavRouteReq uavRouteReq) {
-        this.routeService.buildKmz(uavRouteReq);
+    public KmzBuildVO buildKmz(@RequestBody UavRouteReq uavRouteReq) {
+        return this.routeService.buildKmz(uavRouteReq);
+    }
+
+    /**
+     * 按生成编号下载已生成的kmz文件
+     */
+    @GetMapping("/kmz/{buildId}")
+    @Operation(summary = "下载已生成的kmz文件")
+    public void downloadKmz(@PathVariable("buildId") String buildId, HttpServletResponse response) throws IOException {
+        File file = this.routeService.findKmz(buildId);
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType(KMZ_CONTENT_TYPE);
+        response.setContentLengthLong(file.length());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(file.getName(), StandardCharsets.UTF_8).build().toString());
+        Files.copy(file.toPath(), response.getOutputStream());
+    }
+
+    /**
+     * 生成kmz文件并直接下载
+     *
+     * @param persist     是否同时保存到本地目录，保存时生成编号在响应头 X-Build-Id 中返回，可按编号下载
+     * @param compression 压缩策略：store、deflate[:级别]、auto[:阈值[:级别]]，不传时使用配置的默认策略
+     */
+    @PostMapping("/buildKmz/stream")
+    @Operation(summary = "生成kmz文件并下载")
+    public void buildKmzStream(@RequestBody UavRouteReq uavRouteReq,
+                               @RequestParam(value = "persist", defaultValue = "false") boolean persist,
+                               @RequestParam(value = "compression", required = false) String compression,
+                               HttpServletResponse response) throws IOException {
+        // 先解析压缩策略，格式错误时还未开始输出
+        KmzCompression kmzCompression = StringUtils.isBlank(compression) ? null : KmzCompression.parse(compression);
+        // 响应头在输出内容之前写入
+        String buildId = persist ? routeFileUtils.contentKey(uavRouteReq, kmzCompression) : null;
+        if (buildId != null) {
+            response.setHeader(BUILD_ID_HEADER, buildId);
+        }
+        response.setContentType(KMZ_CONTENT_TYPE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(RouteFileUtils.toKmzFileName(uavRouteReq.getFileName()) + ".kmz", StandardCharsets.UTF_8).build().toString());
+        this.routeService.buildKmz(uavRouteReq, buildId, response.getOutputStream(), kmzCompression);
+    }
+
+    /**
+     * 批量生成kmz文件并下载
+     *
+     * 航线并发生成，每条航线完成后立即写入返回的 zip 压缩包，压缩包中的文件名取自 fileName
+     *
+     * @param compression 各 kmz 的压缩策略：store、deflate[:级别]、auto[:阈值[:级别]]，不传时使用配置的默认策略
+     */
+    @PostMapping("/buildKmz/batch")
+    @Operation(summary = "批量生成kmz文件并下载")
+    public void buildKmzBatch(@RequestBody List<UavRouteReq> uavRouteReqList,
+                              @RequestParam(value = "compression", required = false) String compression,
+                              HttpServletResponse response) throws IOException {
+        KmzCompression kmzCompression = StringUtils.isBlank(compression) ? null : KmzCompression.parse(compression);
+        response.setContentType(ZIP_CONTENT_TYPE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("航线kmz文件.zip", StandardCharsets.UTF_8).build().toString());
+        this.routeService.buildKmzBatch(uavRouteReqList, response.getOutputStream(), kmzCompression);
     }
 
     /**
      * 解析kmz文件
      *
      * @param fileUrl
+     * @param scope   解析范围：missionConfig（只解析任务信息和航点数量）、kml、wpml、full，不传时为 full
      */
     @PostMapping("/parseKmz")
     @Operation(summary = "解析kmz文件")
-    public KmzInfoVO parseKmz(@RequestParam("fileUrl") String fileUrl) throws IOException {
-        return this.routeService.parseKmz(fileUrl);
+    public KmzInfoVO parseKmz(@RequestParam("fileUrl") String fileUrl,
+                              @RequestParam(value = "scope", required = false) String scope) throws IOException {
+        return this.routeService.parseKmz(fileUrl, KmzParseScope.of(scope));
+    }
+
+    /**
+     * 上传并解析kmz文件
+     *
+     * 不经过 Spring 的 multipart 解析（会先写入临时文件），逐个读取 multipart 部分，
+     * 第一个文件部分边接收边解析，超过大小上限时立即中止
+     *
+     * @param scope 解析范围，也可以作为文件之前的表单字段传入，不传时为 full
+     */
+    @PostMapping(value = "/parseKmz/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "上传并解析kmz文件")
+    public KmzInfoVO parseKmzUpload(@RequestParam(value = "scope", required = false) String scope,
+                                    HttpServletRequest request) throws IOException {
+        FileUpload fileUpload = new FileUpload();
+        fileUpload.setFileSizeMax(uploadMaxSize.toBytes());
+        fileUpload.setFileCountMax(FILE_COUNT_MAX);
+        try {
+            FileItemIterator iterator = fileUpload.getItemIterator(new ServletRequestContext(request));
+            while (iterator.hasNext()) {
+                FileItemStream item = iterator.next();
+                try (InputStream inputStream = item.openStream()) {
+                    if (!item.isFormField()) {
+                        return this.routeService.parseKmz(inputStream, KmzParseScope.of(scope));
+                    }
+                    if ("scope".equals(item.getFieldName()) && StringUtils.isBlank(scope)) {
+                        scope = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                }
+            }
+        } catch (FileUploadException e) {
+            throw new IOException("kmz 文件上传失败", e);
+        }
+        throw new IllegalArgumentException("请求中没有 kmz 文件");
+    }
+
+    /**
+     * 批量解析kmz文件，每个文件的结果解析完成后立即按 NDJSON 输出一行，单个文件失败不影响其他文件
+     */
+    @PostMapping(value = "/parseKmz/batch", produces = NDJSON_CONTENT_TYPE)
+    @Operation(summary = "批量解析kmz文件")
+    public void parseKmzBatch(@RequestBody KmzBatchParseReq kmzBatchParseReq, HttpServletResponse response) throws IOException {
+        KmzParseScope scope = KmzParseScope.of(kmzBatchParseReq.getScope());
+        response.setContentType(NDJSON_CONTENT_TYPE);
+        OutputStream outputStream = response.getOutputStream();
+        try (KmzBatchParser batchParser = this.routeService.openKmzBatch(scope, result -> writeNdjsonLine(outputStream, result))) {
+            if (kmzBatchParseReq.getFileUrls() != null) {
+                for (String fileUrl : kmzBatchParseReq.getFileUrls()) {
+                    batchParser.submitUrl(fileUrl);
+                }
+            }
+            batchParser.finish();
+        }
+    }
+
+    /**
+     * 上传并批量解析kmz文件，输出格式与 /parseKmz/batch 相同
+     *
+     * 上传的文件依次写入临时文件后并发解析
+     *
+     * @param scope 解析范围，也可以作为第一个文件之前的表单字段传入，不传时为 full
+     */
+    @PostMapping(value = "/parseKmz/batch/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = NDJSON_CONTENT_TYPE)
+    @Operation(summary = "上传并批量解析kmz文件")
+    public void parseKmzBatchUpload(@RequestParam(value = "scope", required = false) String scope,
+                                    HttpServletRequest request, HttpServletResponse response) throws IOException {
+        FileUpload fileUpload = new FileUpload();
+        fileUpload.setFileSizeMax(uploadMaxSize.toBytes());
+        fileUpload.setFileCountMax(batchFileCountMax);
+        KmzBatchParser batchParser = null;
+        try {
+            FileItemIterator iterator = fileUpload.getItemIterator(new ServletRequestContext(request));
+            while (iterator.hasNext()) {
+                FileItemStream item = iterator.next();
+                try (InputStream inputStream = item.openStream()) {
+                    if (item.isFormField()) {
+                        if ("scope".equals(item.getFieldName()) && batchParser == null && StringUtils.isBlank(scope)) {
+                            scope = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+                        }
+                        continue;
+                    }
+                    if (batchParser == null) {
+                        // 遇到第一个文件时才确定解析范围并开始输出
+                        KmzParseScope kmzParseScope = KmzParseScope.of(scope);
+                        response.setContentType(NDJSON_CONTENT_TYPE);
+                        OutputStream outputStream = response.getOutputStream();
+                        batchParser = this.routeService.openKmzBatch(kmzParseScope, result -> writeNdjsonLine(outputStream, result));
+                    }
+                    batchParser.submitUpload(item.getName(), inputStream);
+                }
+            }
+            if (batchParser != null) {
+                batchParser.finish();
+            }
+        } catch (FileUploadException e) {
+            throw new IOException("kmz 文件上传失败", e);
+        } finally {
+            if (batchParser != null) {
+                batchParser.close();
+            }
+        }
+    }
+
+    private void writeNdjsonLine(OutputStream outputStream, Object value) throws IOException {
+        outputStream.write(objectMapper.writeValueAsBytes(value));
+        outputStream.write('\n');
+        outputStream.flush();
+    }
+
+    /**
+     * 临时空间使用情况
+     */
+    @GetMapping("/scratchUsage")
+    @Operation(summary = "临时空间使用情况")
+    public ScratchUsageVO scratchUsage() {
+        return this.routeService.getScratchUsage();
+    }
+
+    /**
+     * kmz 解析结果缓存统计
+     */
+    @GetMapping("/parseCache")
+    @Operation(summary = "kmz解析缓存统计")
+    public KmzParseCacheStatsVO parseCacheStats() {
+        return this.routeService.getParseCacheStats();
+    }
+
+    /**
+     * kmz 解析结果缓存条目，最久未访问的在前
+     */
+    @GetMapping("/parseCache/entries")
+    @Operation(summary = "kmz解析缓存条目")
+    public List<KmzParseCacheEntryVO> parseCacheEntries() {
+        return this.routeService.getParseCacheEntries();
+    }
+
+    /**
+     * 删除 kmz 解析结果缓存
+     *
+     * @param key 缓存键，不传时清空缓存
+     * @return 删除的条目数
+     */
+    @DeleteMapping("/parseCache")
+    @Operation(summary = "删除kmz解析缓存")
+    public int invalidateParseCache(@RequestParam(value = "key", required = false) String key) {
+        return this.routeService.invalidateParseCache(key);
     }
 }
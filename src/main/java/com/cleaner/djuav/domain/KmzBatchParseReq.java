@@ -0,0 +1,24 @@
+package com.cleaner.djuav.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@Schema(description = "批量解析kmz文件请求参数")
+public class KmzBatchParseReq implements Serializable {
+
+    /**
+     * kmz 文件地址
+     */
+    @Schema(description = "kmz 文件地址", required = true)
+    private List<String> fileUrls;
+
+    /**
+     * 解析范围：missionConfig、kml、wpml、full，不传时为 full
+     */
+    @Schema(description = "解析范围: missionConfig-只解析任务信息和航点数量, kml, wpml, full，不传时为 full")
+    private String scope;
+}
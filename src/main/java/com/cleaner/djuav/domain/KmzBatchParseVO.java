@@ -0,0 +1,35 @@
+package com.cleaner.djuav.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+@Data
+@Schema(description = "批量解析中单个kmz文件的结果")
+public class KmzBatchParseVO implements Serializable {
+
+    /**
+     * 在请求中的序号（从 0 开始），结果按完成顺序返回
+     */
+    @Schema(description = "在请求中的序号（从 0 开始），结果按完成顺序返回")
+    private Integer index;
+
+    /**
+     * 文件地址或上传的文件名
+     */
+    @Schema(description = "文件地址或上传的文件名")
+    private String source;
+
+    /**
+     * 解析结果，失败时为 null
+     */
+    @Schema(description = "解析结果，失败时为 null")
+    private KmzInfoVO kmzInfo;
+
+    /**
+     * 失败原因，成功时为 null
+     */
+    @Schema(description = "失败原因，成功时为 null")
+    private String error;
+}
@@ -0,0 +1,35 @@
+package com.cleaner.djuav.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+@Data
+@Schema(description = "生成的kmz文件")
+public class KmzBuildVO implements Serializable {
+
+    /**
+     * 生成编号，由航线内容计算的哈希，内容相同（包括只有文件名不同）的生成共用同一编号，可用于下载
+     */
+    @Schema(description = "生成编号，由航线内容计算的哈希，内容相同（包括只有文件名不同）的生成共用同一编号，可用于 GET /kmz/{buildId} 下载")
+    private String buildId;
+
+    /**
+     * 文件名（含扩展名）
+     */
+    @Schema(description = "文件名（含扩展名）")
+    private String fileName;
+
+    /**
+     * 本地文件路径
+     */
+    @Schema(description = "本地文件路径")
+    private String filePath;
+
+    /**
+     * 文件大小（字节）
+     */
+    @Schema(description = "文件大小（字节）")
+    private Long size;
+}
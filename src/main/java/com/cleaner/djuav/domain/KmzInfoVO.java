@@ -9,6 +9,8 @@ import java.io.Serializable;
 /**
  * Author:Cleaner
  * Date: 2024/12/22 10:46
+ *
+ * 解析结果中的航点延迟解码：访问 Folder 的 placemarkList 或序列化时才解码
  **/
 @Data
 @JsonNaming(PropertyNamingStrategies.LowerCamelCaseStrategy.class)
@@ -24,5 +26,10 @@ public class KmzInfoVO implements Serializable {
      */
     private KmlInfo wpmlInfo;
 
+    /**
+     * 航点数量
+     */
+    private Integer waypointCount;
+
 }
 
@@ -0,0 +1,26 @@
+package com.cleaner.djuav.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+@Data
+@Schema(description = "kmz 解析结果缓存条目")
+public class KmzParseCacheEntryVO implements Serializable {
+
+    @Schema(description = "缓存键：解析范围、文件地址、ETag 或 Last-Modified")
+    private String key;
+
+    @Schema(description = "权重（估算占用内存，字节）")
+    private Long weight;
+
+    @Schema(description = "命中次数")
+    private Long hitCount;
+
+    @Schema(description = "加入缓存的时间戳（毫秒）")
+    private Long createTime;
+
+    @Schema(description = "最近访问的时间戳（毫秒）")
+    private Long lastAccessTime;
+}
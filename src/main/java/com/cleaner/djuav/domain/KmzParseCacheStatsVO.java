@@ -0,0 +1,47 @@
+package com.cleaner.djuav.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+@Data
+@Schema(description = "kmz 解析结果缓存统计")
+public class KmzParseCacheStatsVO implements Serializable {
+
+    @Schema(description = "权重上限（估算占用内存，字节），0 表示不缓存")
+    private Long maxWeight;
+
+    @Schema(description = "当前权重（估算占用内存，字节）")
+    private Long weight;
+
+    @Schema(description = "缓存条目数")
+    private Integer size;
+
+    @Schema(description = "命中次数")
+    private Long hitCount;
+
+    @Schema(description = "未命中次数")
+    private Long missCount;
+
+    @Schema(description = "命中率")
+    private Double hitRate;
+
+    @Schema(description = "因超过权重上限而淘汰的条目数")
+    private Long evictionCount;
+
+    @Schema(description = "响应没有 ETag、Last-Modified 而无法缓存的次数")
+    private Long uncacheableCount;
+
+    @Schema(description = "正在下载、解析的文件数")
+    private Integer inFlightCount;
+
+    @Schema(description = "等待其他请求的解析结果而未重复解析的次数")
+    private Long sharedCount;
+
+    @Schema(description = "条件请求返回 304（文件未变化、未传输内容）的次数")
+    private Long notModifiedCount;
+
+    @Schema(description = "内存中没有、从磁盘读取解析结果的次数")
+    private Long diskHitCount;
+}
@@ -0,0 +1,35 @@
+package com.cleaner.djuav.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+
+@Data
+@Schema(description = "临时空间使用情况")
+public class ScratchUsageVO implements Serializable {
+
+    @Schema(description = "临时文件目录")
+    private String directory;
+
+    @Schema(description = "磁盘配额（字节）")
+    private Long quota;
+
+    @Schema(description = "当前已预留（字节）")
+    private Long reservedBytes;
+
+    @Schema(description = "预留峰值（字节）")
+    private Long peakReservedBytes;
+
+    @Schema(description = "未删除的临时文件数")
+    private Integer activeFiles;
+
+    @Schema(description = "累计创建的临时文件数")
+    private Long createdFiles;
+
+    @Schema(description = "因配额不足而等待的次数")
+    private Long waitCount;
+
+    @Schema(description = "因配额不足而拒绝的次数")
+    private Long rejectedCount;
+}
@@ -246,4 +246,23 @@ public class UavRouteReq implements Serializable {
     @Schema(description = "航线初始动作列表")
     private List<PointActionReq> startActionList;
 
-}
\ No newline at end of file
+    /**
+     * 生成的kmz文件名（不含扩展名）
+     * 不传时为"航线kmz文件"；批量生成时作为压缩包中的文件名
+     */
+    @Schema(description = "生成的kmz文件名（不含扩展名），批量生成时作为压缩包中的文件名，不传时为\"航线kmz文件\"")
+    private String fileName;
+
+    /**
+     * 编辑kmz文件时原文件的生成编号（buildKmz 返回的 buildId）
+     */
+    @Schema(description = "编辑kmz文件时原文件的生成编号，优先于 fileUrl")
+    private String buildId;
+
+    /**
+     * 编辑kmz文件时原文件的地址，未传 buildId 时使用
+     */
+    @Schema(description = "编辑kmz文件时原文件的地址，未传 buildId 时使用")
+    private String fileUrl;
+
+}
@@ -0,0 +1,56 @@
+package com.cleaner.djuav.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@Schema(description = """
+        航点操作
+        
+        type字段可选值:
+        - "insert": 在 index 位置插入 routePointList
+        - "delete": 删除 index ~ endIndex 的航点，endIndex 不传时只删除 index
+        - "move": 将 index 位置的航点移动到 toIndex
+        - "update": 用 routePoint 替换 index 位置的航点
+        """)
+public class WaypointOperationReq implements Serializable {
+
+    /**
+     * 操作类型: insert、delete、move、update
+     */
+    @Schema(description = "操作类型: insert-插入, delete-删除, move-移动, update-修改", required = true)
+    private String type;
+
+    /**
+     * 航点位置（从 0 开始）
+     */
+    @Schema(description = "航点位置（从 0 开始）", required = true)
+    private Integer index;
+
+    /**
+     * 删除的结束位置（包含）
+     */
+    @Schema(description = "删除的结束位置（包含），不传时只删除 index")
+    private Integer endIndex;
+
+    /**
+     * 移动后的位置
+     */
+    @Schema(description = "移动后的位置")
+    private Integer toIndex;
+
+    /**
+     * 插入的航点
+     */
+    @Schema(description = "插入的航点")
+    private List<RoutePointReq> routePointList;
+
+    /**
+     * 修改后的航点
+     */
+    @Schema(description = "修改后的航点")
+    private RoutePointReq routePoint;
+}
@@ -0,0 +1,24 @@
+package com.cleaner.djuav.domain;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@Schema(description = "航点编辑请求参数")
+public class WaypointPatchReq implements Serializable {
+
+    /**
+     * 原 kmz 文件地址
+     */
+    @Schema(description = "原 kmz 文件地址", required = true)
+    private String fileUrl;
+
+    /**
+     * 航点操作，按顺序执行，位置均为执行到该操作时的航点位置
+     */
+    @Schema(description = "航点操作，按顺序执行，位置均为执行到该操作时的航点位置", required = true)
+    private List<WaypointOperationReq> operations;
+}
@@ -4,6 +4,7 @@ import com.cleaner.djuav.domain.MappingTypeReq;
 import com.cleaner.djuav.domain.PointActionReq;
 import com.cleaner.djuav.domain.WaypointHeadingReq;
 import com.cleaner.djuav.domain.WaypointTurnReq;
+import com.cleaner.djuav.util.kml.KmlNumberFormat;
 import lombok.Data;
 
 import java.util.List;
@@ -103,5 +104,27 @@ public class KmlParams {
      * 航线初始动作列表
      */
     private List<PointActionReq> startActionList;
+
+    /**
+     * 列式航点，构建航线时使用；未设置时由 routePointList 转换
+     */
+    private RouteColumns routeColumns;
+
+    /**
+     * 数值格式（各字段小数位数），构建航线时使用；未设置时使用默认精度
+     */
+    private KmlNumberFormat numberFormat = KmlNumberFormat.DEFAULT;
+
+    public void setRoutePointList(List<RoutePointInfo> routePointList) {
+        this.routePointList = routePointList;
+        this.routeColumns = null;
+    }
+
+    public RouteColumns getRouteColumns() {
+        if (routeColumns == null && routePointList != null) {
+            routeColumns = RouteColumns.ofRoutePoints(routePointList);
+        }
+        return routeColumns;
+    }
 }
 
@@ -0,0 +1,244 @@
+package com.cleaner.djuav.domain.kml;
+
+import com.cleaner.djuav.domain.ActionGroupReq;
+import com.cleaner.djuav.domain.RoutePointReq;
+import com.cleaner.djuav.domain.WaypointHeadingReq;
+import com.cleaner.djuav.domain.WaypointTurnReq;
+
+import java.util.*;
+
+/**
+ * 航点列式存储
+ *
+ * 航线内部统一使用的航点模型：经纬度、高度、速度、云台俯仰角存为 double[]（NaN 表示未设置），
+ * 航点编号存为 int[]；偏航角、转弯、动作组参数去重后存入字典表，每个航点只记录字典下标（-1 表示未设置）。
+ * 只在接口参数（RoutePointReq/RoutePointInfo）和 XML（KmlPlacemark）边界做转换。
+ */
+public class RouteColumns {
+
+    /**
+     * 未设置航点编号
+     */
+    private static final int NULL_INDEX = Integer.MIN_VALUE;
+
+    private final int size;
+
+    private final int[] routePointIndex;
+
+    private final double[] longitude;
+
+    private final double[] latitude;
+
+    private final double[] height;
+
+    private final double[] speed;
+
+    private final double[] gimbalPitchAngle;
+
+    private final int[] headingRef;
+
+    private final int[] turnRef;
+
+    private final int[] actionGroupRef;
+
+    private final BitSet startAndEndPoint;
+
+    private final List<WaypointHeadingReq> headingTable = new ArrayList<>();
+
+    private final List<WaypointTurnReq> turnTable = new ArrayList<>();
+
+    private final List<List<ActionGroupReq>> actionGroupTable = new ArrayList<>();
+
+    private final Map<Object, Integer> tableIndex = new HashMap<>();
+
+    private int count;
+
+    private int firstPosition = -1;
+
+    private int lastPosition = -1;
+
+    private RouteColumns(int size) {
+        this.size = size;
+        this.routePointIndex = new int[size];
+        this.longitude = new double[size];
+        this.latitude = new double[size];
+        this.height = new double[size];
+        this.speed = new double[size];
+        this.gimbalPitchAngle = new double[size];
+        this.headingRef = new int[size];
+        this.turnRef = new int[size];
+        this.actionGroupRef = new int[size];
+        this.startAndEndPoint = new BitSet(size);
+    }
+
+    /**
+     * 由航点信息列表转换
+     *
+     * @param routePointList 航点信息列表
+     * @return 列式航点
+     */
+    public static RouteColumns ofRoutePoints(List<RoutePointInfo> routePointList) {
+        RouteColumns columns = new RouteColumns(routePointList.size());
+        for (RoutePointInfo point : routePointList) {
+            columns.add(point.getRoutePointIndex(), point.getLongitude(), point.getLatitude(), point.getHeight(), point.getSpeed(),
+                    point.getGimbalPitchAngle(), point.getWaypointHeadingReq(), point.getWaypointTurnReq(), point.getActionGroupList(),
+                    Boolean.TRUE.equals(point.getIsStartAndEndPoint()));
+        }
+        columns.tableIndex.clear();
+        return columns;
+    }
+
+    /**
+     * 由接口请求的航点列表直接转换，不经过 RoutePointInfo
+     *
+     * @param routePointList 航点请求列表
+     * @return 列式航点
+     */
+    public static RouteColumns ofRoutePointReqs(List<RoutePointReq> routePointList) {
+        RouteColumns columns = new RouteColumns(routePointList.size());
+        for (RoutePointReq point : routePointList) {
+            columns.add(point.getRoutePointIndex(), point.getLongitude(), point.getLatitude(), point.getHeight(), point.getSpeed(),
+                    point.getGimbalPitchAngle(), point.getWaypointHeadingReq(), point.getWaypointTurnReq(), point.getActionGroupList(), false);
+        }
+        columns.tableIndex.clear();
+        return columns;
+    }
+
+    private void add(Integer index, Double lon, Double lat, Double h, Double s, Double pitch, WaypointHeadingReq heading,
+                     WaypointTurnReq turn, List<ActionGroupReq> actionGroupList, boolean startAndEnd) {
+        int i = count++;
+        routePointIndex[i] = index == null ? NULL_INDEX : index;
+        longitude[i] = toDouble(lon);
+        latitude[i] = toDouble(lat);
+        height[i] = toDouble(h);
+        speed[i] = toDouble(s);
+        gimbalPitchAngle[i] = toDouble(pitch);
+        headingRef[i] = intern(heading, headingTable);
+        turnRef[i] = intern(turn, turnTable);
+        actionGroupRef[i] = actionGroupList == null || actionGroupList.isEmpty() ? -1 : intern(actionGroupList, actionGroupTable);
+        if (startAndEnd) {
+            startAndEndPoint.set(i);
+        }
+        // 编号最小、最大的航点为首尾航点，相同编号取第一个
+        if (index != null) {
+            if (firstPosition < 0 || index < routePointIndex[firstPosition]) {
+                firstPosition = i;
+            }
+            if (lastPosition < 0 || index > routePointIndex[lastPosition]) {
+                lastPosition = i;
+            }
+        }
+    }
+
+    private <T> int intern(T value, List<T> table) {
+        if (value == null) {
+            return -1;
+        }
+        return tableIndex.computeIfAbsent(value, key -> {
+            table.add(value);
+            return table.size() - 1;
+        });
+    }
+
+    private static double toDouble(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    private static Double toBoxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Integer getRoutePointIndex(int i) {
+        return routePointIndex[i] == NULL_INDEX ? null : routePointIndex[i];
+    }
+
+    public double longitude(int i) {
+        return longitude[i];
+    }
+
+    public double latitude(int i) {
+        return latitude[i];
+    }
+
+    public double height(int i) {
+        return height[i];
+    }
+
+    public boolean hasHeight(int i) {
+        return !Double.isNaN(height[i]);
+    }
+
+    public double speed(int i) {
+        return speed[i];
+    }
+
+    public boolean hasSpeed(int i) {
+        return !Double.isNaN(speed[i]);
+    }
+
+    public double gimbalPitchAngle(int i) {
+        return gimbalPitchAngle[i];
+    }
+
+    public boolean hasGimbalPitchAngle(int i) {
+        return !Double.isNaN(gimbalPitchAngle[i]);
+    }
+
+    public WaypointHeadingReq getWaypointHeadingReq(int i) {
+        return headingRef[i] < 0 ? null : headingTable.get(headingRef[i]);
+    }
+
+    public WaypointTurnReq getWaypointTurnReq(int i) {
+        return turnRef[i] < 0 ? null : turnTable.get(turnRef[i]);
+    }
+
+    public List<ActionGroupReq> getActionGroupList(int i) {
+        return actionGroupRef[i] < 0 ? null : actionGroupTable.get(actionGroupRef[i]);
+    }
+
+    /**
+     * 是否首尾航点（首尾航点不能是协调转弯类型）
+     *
+     * @param i                 航点位置
+     * @param markStartAndEnd   是否按编号自动标记首尾航点，为 false 时只取输入中的标记
+     */
+    public boolean isStartAndEndPoint(int i, boolean markStartAndEnd) {
+        return startAndEndPoint.get(i) || (markStartAndEnd && (i == firstPosition || i == lastPosition));
+    }
+
+    /**
+     * 转换回航点信息（接口边界使用）
+     *
+     * @param i 航点位置
+     * @return 航点信息
+     */
+    public RoutePointInfo toRoutePointInfo(int i) {
+        RoutePointInfo routePointInfo = new RoutePointInfo();
+        routePointInfo.setRoutePointIndex(getRoutePointIndex(i));
+        routePointInfo.setLongitude(toBoxed(longitude[i]));
+        routePointInfo.setLatitude(toBoxed(latitude[i]));
+        routePointInfo.setHeight(toBoxed(height[i]));
+        routePointInfo.setSpeed(toBoxed(speed[i]));
+        routePointInfo.setGimbalPitchAngle(toBoxed(gimbalPitchAngle[i]));
+        routePointInfo.setWaypointHeadingReq(getWaypointHeadingReq(i));
+        routePointInfo.setWaypointTurnReq(getWaypointTurnReq(i));
+        routePointInfo.setActionGroupList(getActionGroupList(i));
+        routePointInfo.setIsStartAndEndPoint(startAndEndPoint.get(i));
+        return routePointInfo;
+    }
+
+    /**
+     * 转换回航点信息列表（接口边界使用）
+     */
+    public List<RoutePointInfo> toRoutePointList() {
+        List<RoutePointInfo> routePointList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            routePointList.add(toRoutePointInfo(i));
+        }
+        return routePointList;
+    }
+}
@@ -1,26 +1,128 @@
 package com.cleaner.djuav.service;
 
+import com.cleaner.djuav.domain.KmzBatchParseVO;
+import com.cleaner.djuav.domain.KmzBuildVO;
 import com.cleaner.djuav.domain.KmzInfoVO;
+import com.cleaner.djuav.domain.KmzParseCacheEntryVO;
+import com.cleaner.djuav.domain.KmzParseCacheStatsVO;
+import com.cleaner.djuav.domain.ScratchUsageVO;
 import com.cleaner.djuav.domain.UavRouteReq;
+import com.cleaner.djuav.domain.WaypointPatchReq;
+import com.cleaner.djuav.util.KmzBatchParser;
+import com.cleaner.djuav.util.kml.KmlPlacemarkVisitor;
+import com.cleaner.djuav.util.kml.KmzCompression;
+import com.cleaner.djuav.util.kml.KmzParseScope;
 
+import org.apache.commons.io.function.IOConsumer;
+
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
 
 public interface UavRouteService {
 
     /**
-     * 编辑kmz文件
+     * 编辑kmz文件，原文件按 buildId 查找已生成的文件，未传时按 fileUrl 下载
+     *
+     * @return 新 kmz 文件
+     */
+    KmzBuildVO updateKmz(UavRouteReq uavRouteReq) throws IOException;
+
+    /**
+     * 插入、删除、移动、修改航点，未修改的航点按原始字节复制
+     *
+     * @return 新 kmz 文件
      */
-    void updateKmz(UavRouteReq uavRouteReq);
+    KmzBuildVO patchWaypoints(WaypointPatchReq waypointPatchReq) throws IOException;
 
     /**
      * 生成kmz文件(带航点)
+     *
+     * @return 生成的 kmz 文件，编号由请求内容决定，相同的航线直接返回已生成的文件
+     */
+    KmzBuildVO buildKmz(UavRouteReq uavRouteReq);
+
+    /**
+     * 生成kmz文件并直接写入输出流
+     *
+     * @param buildId      内容编号（RouteFileUtils.contentKey），同时按编号保存到本地目录，为 null 时不保存
+     * @param outputStream 输出流，写完后不关闭
+     * @param compression  压缩策略，为 null 时使用配置的默认策略
+     * @return 保存到本地的 kmz 文件，不保存时返回 null
      */
-    void buildKmz(UavRouteReq uavRouteReq);
+    KmzBuildVO buildKmz(UavRouteReq uavRouteReq, String buildId, OutputStream outputStream, KmzCompression compression) throws IOException;
+
+    /**
+     * 批量生成kmz文件，按完成顺序写入一个 zip 压缩包，单条航线失败时写入同名的 .error.txt
+     *
+     * @param uavRouteReqList 航线请求，fileName 重复时自动加序号
+     * @param outputStream    输出流，写完后不关闭
+     * @param compression     各 kmz 条目的压缩策略，为 null 时使用配置的默认策略
+     */
+    void buildKmzBatch(List<UavRouteReq> uavRouteReqList, OutputStream outputStream, KmzCompression compression) throws IOException;
+
+    /**
+     * 按生成编号查找已生成的kmz文件
+     *
+     * @return kmz 文件，不存在时返回 null
+     */
+    File findKmz(String buildId);
 
     /**
      * 解析kmz文件
      *
      * @param file
+     * @param scope 解析范围
+     */
+    KmzInfoVO parseKmz(String file, KmzParseScope scope) throws IOException;
+
+    /**
+     * 从输入流解析kmz文件，边读取边解析
+     *
+     * @param inputStream kmz 文件输入流，读取完成后关闭
+     * @param scope       解析范围
+     */
+    KmzInfoVO parseKmz(InputStream inputStream, KmzParseScope scope) throws IOException;
+
+    /**
+     * 开始批量解析kmz文件，并发数由配置决定
+     *
+     * @param scope    解析范围
+     * @param consumer 按完成顺序接收每个文件的结果，在调用线程中执行
+     * @return 批量解析器，使用完后关闭
+     */
+    KmzBatchParser openKmzBatch(KmzParseScope scope, IOConsumer<KmzBatchParseVO> consumer);
+
+    /**
+     * 逐个航点解析kmz文件，航点不在内存中累积
+     *
+     * @param fileUrl kmz 文件地址
+     * @param visitor 航点回调
+     */
+    void visitKmz(String fileUrl, KmlPlacemarkVisitor visitor) throws IOException;
+
+    /**
+     * 临时空间使用情况
+     */
+    ScratchUsageVO getScratchUsage();
+
+    /**
+     * kmz 解析结果缓存统计
+     */
+    KmzParseCacheStatsVO getParseCacheStats();
+
+    /**
+     * kmz 解析结果缓存条目，最久未访问的在前
+     */
+    List<KmzParseCacheEntryVO> getParseCacheEntries();
+
+    /**
+     * 删除 kmz 解析结果缓存
+     *
+     * @param key 缓存键，为空时清空缓存
+     * @return 删除的条目数
      */
-    KmzInfoVO parseKmz(String file) throws IOException;
+    int invalidateParseCache(String key);
 }
@@ -1,28 +1,60 @@
 package com.cleaner.djuav.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.collection.CollectionUtil;
-import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
 import cn.hutool.core.util.ObjectUtil;
 import com.cleaner.djuav.constant.FileTypeConstants;
 import com.cleaner.djuav.domain.*;
 import com.cleaner.djuav.domain.kml.*;
 import com.cleaner.djuav.enums.kml.ExitOnRCLostEnums;
+import com.cleaner.djuav.enums.kml.TemplateTypeEnums;
 import com.cleaner.djuav.service.UavRouteService;
+import com.cleaner.djuav.util.BoundedBatch;
 import com.cleaner.djuav.util.FileUtils;
+import com.cleaner.djuav.util.KmzBatchParser;
+import com.cleaner.djuav.util.KmzParseCache;
+import com.cleaner.djuav.util.RemoteFileClient;
 import com.cleaner.djuav.util.RouteFileUtils;
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.ArchiveInputStream;
-import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import com.cleaner.djuav.util.ScratchFile;
+import com.cleaner.djuav.util.ScratchFileManager;
+import com.cleaner.djuav.util.kml.KmlPatch;
+import com.cleaner.djuav.util.kml.KmlPlacemarkVisitor;
+import com.cleaner.djuav.util.kml.KmzArchive;
+import com.cleaner.djuav.util.kml.KmzCompression;
+import com.cleaner.djuav.util.kml.KmzParseScope;
+import com.cleaner.djuav.util.kml.RoutePlacemarkList;
+import com.cleaner.djuav.util.kml.WaypointEditPlan;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.function.IOConsumer;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
 
 /**
  * Author:Cleaner
@@ -31,29 +63,77 @@ import java.util.Objects;
 @Service
 public class UavRouteServiceImpl implements UavRouteService {
 
+    @Resource
+    private RouteFileUtils routeFileUtils;
+
+    @Resource
+    private RemoteFileClient remoteFileClient;
+
+    @Resource
+    private ScratchFileManager scratchFileManager;
+
+    @Resource
+    private KmzParseCache kmzParseCache;
+
+    /**
+     * 批量解析、批量生成的并发数
+     */
+    @Value("${wayline-batch-parallelism:4}")
+    private int batchParallelism;
+
+    /**
+     * 批量解析、批量生成的线程池（所有批量请求共用），启动时创建、关闭时停止
+     */
+    private ExecutorService batchExecutor;
+
+    @PostConstruct
+    public void startBatchExecutor() {
+        batchParallelism = Math.max(1, batchParallelism);
+        batchExecutor = Executors.newFixedThreadPool(batchParallelism,
+                ThreadFactoryBuilder.create().setNamePrefix("kmz-batch-").setDaemon(true).build());
+    }
+
+    /**
+     * 停止批量任务线程池，中断进行中的任务
+     */
+    @PreDestroy
+    public void stopBatchExecutor() {
+        batchExecutor.shutdownNow();
+    }
+
     @Override
-    public void updateKmz(UavRouteReq uavRouteReq) {
-        // TODO 替换本地文件路径！！！
-        File file = FileUtil.file("/Users/Cleaner/Project/IdeaProjects/dj-uav/file/kmz/航线kmz文件.kmz");
-        try (ArchiveInputStream archiveInputStream = new ZipArchiveInputStream(FileUtil.getInputStream(file))) {
-            ArchiveEntry entry;
-            KmlInfo kmlInfo = new KmlInfo();
-            KmlInfo wpmlInfo = new KmlInfo();
+    public KmzBuildVO updateKmz(UavRouteReq uavRouteReq) throws IOException {
+        if (StringUtils.isNotBlank(uavRouteReq.getBuildId())) {
+            File file = routeFileUtils.findKmz(uavRouteReq.getBuildId());
+            if (file == null) {
+                throw new IllegalArgumentException("未找到已生成的kmz文件: " + uavRouteReq.getBuildId());
+            }
+            return updateKmz(uavRouteReq, file);
+        }
+        if (StringUtils.isBlank(uavRouteReq.getFileUrl())) {
+            throw new IllegalArgumentException("原 kmz 文件的生成编号和地址不能同时为空");
+        }
+        // 编辑需要随机读取 zip 条目，先下载到临时文件，结束后立即删除
+        try (ScratchFile scratchFile = FileUtils.downloadUrlToTempFile(uavRouteReq.getFileUrl(), remoteFileClient, scratchFileManager)) {
+            return updateKmz(uavRouteReq, scratchFile.getFile());
+        }
+    }
+
+    private KmzBuildVO updateKmz(UavRouteReq uavRouteReq, File file) throws IOException {
+        // 只替换修改的元素，其余内容按原始字节复制；资源文件等其他条目原样复制到新文件，不解压
+        try (KmzArchive kmzArchive = KmzArchive.open(file)) {
             KmlParams kmlParams = new KmlParams();
-            while (!Objects.isNull(entry = archiveInputStream.getNextEntry())) {
-                String name = entry.getName();
-                if (name.toLowerCase().endsWith(".kml")) {
-                    kmlInfo = RouteFileUtils.parseKml(archiveInputStream);
-                    buildKmlParams(kmlParams, kmlInfo);
-                    this.handleRouteUpdate(kmlInfo, uavRouteReq, FileTypeConstants.KML, kmlParams);
-                } else if (name.toLowerCase().endsWith(".wpml")) {
-                    wpmlInfo = RouteFileUtils.parseKml(archiveInputStream);
-                    this.handleRouteUpdate(wpmlInfo, uavRouteReq, FileTypeConstants.WPML, kmlParams);
+            if (CollectionUtil.isNotEmpty(uavRouteReq.getRoutePointList()) && kmzArchive.hasKml()) {
+                // 重新生成航点时才需要读取航线参数
+                KmlInfo kmlInfo;
+                try (InputStream inputStream = kmzArchive.openKml()) {
+                    kmlInfo = RouteFileUtils.parseKmlLazily(inputStream, routeFileUtils.getKmlParser());
                 }
+                buildKmlParams(kmlParams, kmlInfo);
             }
-            RouteFileUtils.buildKmz("更新航线kmz文件", kmlInfo, wpmlInfo);
-        } catch (Exception e) {
-            e.printStackTrace();
+            return routeFileUtils.patchKmz("更新航线kmz文件", kmzArchive,
+                    buildKmlPatch(uavRouteReq, FileTypeConstants.KML, kmlParams),
+                    buildKmlPatch(uavRouteReq, FileTypeConstants.WPML, kmlParams));
         }
     }
 
@@ -80,53 +160,253 @@ public class UavRouteServiceImpl implements UavRouteService {
         kmlParams.setGimbalPitchMode(folder.getGimbalPitchMode());
         kmlParams.setPayloadPosition(Integer.valueOf(kmlInfo.getDocument().getKmlMissionConfig().getPayloadInfo().getPayloadPositionIndex()));
         kmlParams.setImageFormat(folder.getPayloadParam().getImageFormat());
+        kmlParams.setTemplateType(folder.getTemplateType());
     }
 
-    private void handleRouteUpdate(KmlInfo kmlInfo, UavRouteReq uavRouteReq, String fileType, KmlParams kmlParams) {
+    @Override
+    public KmzBuildVO patchWaypoints(WaypointPatchReq waypointPatchReq) throws IOException {
+        if (CollectionUtil.isEmpty(waypointPatchReq.getOperations())) {
+            throw new IllegalArgumentException("航点操作不能为空");
+        }
+        // 编辑需要随机读取 zip 条目，先下载到临时文件，结束后立即删除
+        try (ScratchFile scratchFile = FileUtils.downloadUrlToTempFile(waypointPatchReq.getFileUrl(), remoteFileClient, scratchFileManager);
+             KmzArchive kmzArchive = KmzArchive.open(scratchFile.getFile())) {
+            KmlInfo kmlInfo;
+            try (InputStream inputStream = kmzArchive.openKml()) {
+                kmlInfo = RouteFileUtils.parseKmlLazily(inputStream, routeFileUtils.getKmlParser());
+            }
+            // 只有航点航线的 template.kml 与 waylines.wpml 航点一一对应
+            if (!TemplateTypeEnums.WAYPOINT.getValue().equals(kmlInfo.getDocument().getFolder().getTemplateType())) {
+                throw new IllegalArgumentException("只有航点航线支持编辑航点");
+            }
+            KmlParams kmlParams = new KmlParams();
+            buildKmlParams(kmlParams, kmlInfo);
+
+            WaypointEditPlan plan = new WaypointEditPlan(RouteFileUtils.getPlacemarkCount(kmlInfo));
+            List<RoutePointReq> addedPointList = new ArrayList<>();
+            for (WaypointOperationReq operation : waypointPatchReq.getOperations()) {
+                applyOperation(plan, operation, addedPointList);
+            }
+            RouteColumns routeColumns = RouteColumns.ofRoutePointReqs(addedPointList);
+            return routeFileUtils.patchKmz("更新航线kmz文件", kmzArchive,
+                    new KmlPatch().setWaypointEdit(plan, new RoutePlacemarkList(routeColumns, kmlParams, FileTypeConstants.KML, false)),
+                    new KmlPatch().setWaypointEdit(plan, new RoutePlacemarkList(routeColumns, kmlParams, FileTypeConstants.WPML, false)));
+        }
+    }
+
+    /**
+     * 执行单个航点操作，新增的航点按新增序号追加到 addedPointList
+     */
+    private static void applyOperation(WaypointEditPlan plan, WaypointOperationReq operation, List<RoutePointReq> addedPointList) {
+        if (operation.getIndex() == null) {
+            throw new IllegalArgumentException("航点位置不能为空");
+        }
+        int index = operation.getIndex();
+        switch (StringUtils.defaultString(operation.getType())) {
+            case "insert" -> {
+                if (CollectionUtil.isEmpty(operation.getRoutePointList())) {
+                    throw new IllegalArgumentException("插入的航点不能为空");
+                }
+                plan.insert(index, operation.getRoutePointList().size());
+                addedPointList.addAll(operation.getRoutePointList());
+            }
+            case "delete" -> plan.delete(index, operation.getEndIndex() == null ? index : operation.getEndIndex());
+            case "move" -> {
+                if (operation.getToIndex() == null) {
+                    throw new IllegalArgumentException("移动后的位置不能为空");
+                }
+                plan.move(index, operation.getToIndex());
+            }
+            case "update" -> {
+                if (operation.getRoutePoint() == null) {
+                    throw new IllegalArgumentException("修改后的航点不能为空");
+                }
+                plan.replace(index);
+                addedPointList.add(operation.getRoutePoint());
+            }
+            default -> throw new IllegalArgumentException("不支持的航点操作: " + operation.getType());
+        }
+    }
+
+    private static KmlPatch buildKmlPatch(UavRouteReq uavRouteReq, String fileType, KmlParams kmlParams) {
+        KmlPatch kmlPatch = new KmlPatch();
         if (StringUtils.isNotBlank(uavRouteReq.getFinishAction())) {
-            kmlInfo.getDocument().getKmlMissionConfig().setFinishAction(uavRouteReq.getFinishAction());
+            kmlPatch.setMissionConfig("finishAction", uavRouteReq.getFinishAction());
         }
         if (StringUtils.isNotBlank(uavRouteReq.getExitOnRcLostAction())) {
-            kmlInfo.getDocument().getKmlMissionConfig().setExitOnRCLost(ExitOnRCLostEnums.EXECUTE_LOST_ACTION.getValue());
-            kmlInfo.getDocument().getKmlMissionConfig().setExecuteRCLostAction(uavRouteReq.getExitOnRcLostAction());
+            kmlPatch.setMissionConfig("exitOnRCLost", ExitOnRCLostEnums.EXECUTE_LOST_ACTION.getValue());
+            kmlPatch.setMissionConfig("executeRCLostAction", uavRouteReq.getExitOnRcLostAction());
         }
         if (CollectionUtil.isNotEmpty(uavRouteReq.getRoutePointList())) {
-            List<KmlPlacemark> placemarkList = new ArrayList<>();
-            for (RoutePointReq routePointReq : uavRouteReq.getRoutePointList()) {
-                RoutePointInfo routePointInfo = BeanUtil.copyProperties(routePointReq, RoutePointInfo.class);
-                KmlPlacemark kmlPlacemark = RouteFileUtils.buildKmlPlacemark(routePointInfo, kmlParams, fileType);
-                placemarkList.add(kmlPlacemark);
-            }
-            kmlInfo.getDocument().getFolder().setPlacemarkList(placemarkList);
+            RouteColumns routeColumns = RouteColumns.ofRoutePointReqs(uavRouteReq.getRoutePointList());
+            kmlPatch.setPlacemarkList(new RoutePlacemarkList(routeColumns, kmlParams, fileType, false));
         }
+        return kmlPatch;
     }
 
     @Override
-    public void buildKmz(UavRouteReq uavRouteReq) {
-        KmlParams kmlParams = new KmlParams();
-        BeanUtils.copyProperties(uavRouteReq, kmlParams);
-        kmlParams.setRoutePointList(BeanUtil.copyToList(uavRouteReq.getRoutePointList(), RoutePointInfo.class));
-        RouteFileUtils.buildKmz("航线kmz文件", kmlParams);
+    public KmzBuildVO buildKmz(UavRouteReq uavRouteReq) {
+        // 按请求内容寻址，相同航线直接返回已生成的文件
+        return routeFileUtils.buildKmz(routeFileUtils.contentKey(uavRouteReq), uavRouteReq.getFileName(), toKmlParams(uavRouteReq));
     }
 
     @Override
-    public KmzInfoVO parseKmz(String fileUrl) throws IOException {
-        KmzInfoVO kmzInfoVO = new KmzInfoVO();
-        File file = FileUtils.downloadUrlToTempFile(fileUrl);
-        try (ArchiveInputStream archiveInputStream = new ZipArchiveInputStream(FileUtil.getInputStream(file))) {
-            ArchiveEntry entry;
-            while (!Objects.isNull(entry = archiveInputStream.getNextEntry())) {
-                String name = entry.getName();
-                if (name.toLowerCase().endsWith(".kml")) {
-                    kmzInfoVO.setKmlInfo(RouteFileUtils.parseKml(archiveInputStream));
-                } else if (name.toLowerCase().endsWith(".wpml")) {
-                    kmzInfoVO.setWpmlInfo(RouteFileUtils.parseKml(archiveInputStream));
-                }
+    public KmzBuildVO buildKmz(UavRouteReq uavRouteReq, String buildId, OutputStream outputStream, KmzCompression compression) throws IOException {
+        return routeFileUtils.buildKmz(buildId, uavRouteReq.getFileName(), toKmlParams(uavRouteReq), outputStream, compression);
+    }
+
+    @Override
+    public void buildKmzBatch(List<UavRouteReq> uavRouteReqList, OutputStream outputStream, KmzCompression compression) throws IOException {
+        ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+        // 已生成但尚未写入压缩包的文件，中途失败时统一删除
+        Set<ScratchFile> scratchFiles = ConcurrentHashMap.newKeySet();
+        Set<String> fileNames = new HashSet<>();
+        try (BoundedBatch<KmzBatchBuildResult> batch = new BoundedBatch<>(batchExecutor, batchParallelism, result -> {
+            writeBatchEntry(zipOutputStream, result);
+            if (result.scratchFile() != null) {
+                scratchFiles.remove(result.scratchFile());
+                result.scratchFile().close();
+            }
+        })) {
+            for (UavRouteReq uavRouteReq : uavRouteReqList) {
+                String fileName = uniqueFileName(RouteFileUtils.toKmzFileName(uavRouteReq.getFileName()), fileNames);
+                batch.submit(() -> buildToScratchFile(fileName, uavRouteReq, compression, scratchFiles));
             }
-            return kmzInfoVO;
+            batch.finish();
+        } finally {
+            for (ScratchFile scratchFile : scratchFiles) {
+                scratchFile.close();
+            }
+        }
+        zipOutputStream.finish();
+        zipOutputStream.flush();
+    }
+
+    /**
+     * 批量生成中单条航线的结果，成功时 scratchFile 不为 null
+     */
+    private record KmzBatchBuildResult(String fileName, ScratchFile scratchFile, long crc, String error) {
+    }
+
+    /**
+     * 生成单条航线到临时文件，同时计算 CRC，写入压缩包时无需再读一遍
+     */
+    private KmzBatchBuildResult buildToScratchFile(String fileName, UavRouteReq uavRouteReq, KmzCompression compression, Set<ScratchFile> scratchFiles) {
+        ScratchFile scratchFile = null;
+        try {
+            scratchFile = scratchFileManager.create(".kmz");
+            scratchFiles.add(scratchFile);
+            CRC32 crc = new CRC32();
+            try (OutputStream outputStream = new CheckedOutputStream(scratchFile.openOutputStream(), crc)) {
+                routeFileUtils.buildKmz(null, fileName, toKmlParams(uavRouteReq), outputStream, compression);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                // 批量生成已中止，结果不会再写入压缩包
+                throw new InterruptedIOException("批量生成已中止");
+            }
+            return new KmzBatchBuildResult(fileName, scratchFile, crc.getValue(), null);
         } catch (Exception e) {
-            e.printStackTrace();
+            if (scratchFile != null) {
+                scratchFiles.remove(scratchFile);
+                IoUtil.close(scratchFile);
+            }
+            return new KmzBatchBuildResult(fileName, null, 0, ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    /**
+     * 航线 kmz 原样存入压缩包（不再压缩）；失败的航线写入同名的 .error.txt 说明原因
+     */
+    private static void writeBatchEntry(ZipArchiveOutputStream zipOutputStream, KmzBatchBuildResult result) throws IOException {
+        if (result.scratchFile() == null) {
+            ZipArchiveEntry entry = new ZipArchiveEntry(result.fileName() + ".error.txt");
+            zipOutputStream.putArchiveEntry(entry);
+            zipOutputStream.write(result.error().getBytes(StandardCharsets.UTF_8));
+        } else {
+            File file = result.scratchFile().getFile();
+            ZipArchiveEntry entry = new ZipArchiveEntry(result.fileName() + ".kmz");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(file.length());
+            entry.setCrc(result.crc());
+            zipOutputStream.putArchiveEntry(entry);
+            Files.copy(file.toPath(), zipOutputStream);
+        }
+        zipOutputStream.closeArchiveEntry();
+        // 每条航线完成后立即发送
+        zipOutputStream.flush();
+    }
+
+    /**
+     * 文件名重复时依次加上 (2)、(3)……
+     */
+    private static String uniqueFileName(String fileName, Set<String> fileNames) {
+        String uniqueName = fileName;
+        for (int i = 2; !fileNames.add(uniqueName); i++) {
+            uniqueName = fileName + "(" + i + ")";
+        }
+        return uniqueName;
+    }
+
+    private static KmlParams toKmlParams(UavRouteReq uavRouteReq) {
+        KmlParams kmlParams = new KmlParams();
+        BeanUtils.copyProperties(uavRouteReq, kmlParams);
+        if (uavRouteReq.getRoutePointList() != null) {
+            kmlParams.setRouteColumns(RouteColumns.ofRoutePointReqs(uavRouteReq.getRoutePointList()));
+        }
+        return kmlParams;
+    }
+
+    @Override
+    public KmzInfoVO parseKmz(String fileUrl, KmzParseScope scope) throws IOException {
+        // 边下载边解析，不落盘；文件未变化（ETag 相同）时使用缓存的解析结果
+        // 下载失败、超时、超过大小上限等异常直接抛出，与上传解析一致
+        return kmzParseCache.parseKmz(remoteFileClient, fileUrl, scope);
+    }
+
+    @Override
+    public KmzInfoVO parseKmz(InputStream inputStream, KmzParseScope scope) throws IOException {
+        // 上传的流无法重试，超过大小上限等异常直接抛出
+        return RouteFileUtils.parseKmz(inputStream, scope, routeFileUtils.getKmlParser());
+    }
+
+    @Override
+    public KmzBatchParser openKmzBatch(KmzParseScope scope, IOConsumer<KmzBatchParseVO> consumer) {
+        return new KmzBatchParser(batchExecutor, batchParallelism, scope, remoteFileClient, kmzParseCache, scratchFileManager, consumer);
+    }
+
+    @Override
+    public void visitKmz(String fileUrl, KmlPlacemarkVisitor visitor) throws IOException {
+        remoteFileClient.read(fileUrl, inputStream -> {
+            RouteFileUtils.visitKmz(inputStream, visitor);
+            return null;
+        });
+    }
+
+    @Override
+    public ScratchUsageVO getScratchUsage() {
+        return scratchFileManager.getUsage();
+    }
+
+    @Override
+    public KmzParseCacheStatsVO getParseCacheStats() {
+        return kmzParseCache.getStats();
+    }
+
+    @Override
+    public List<KmzParseCacheEntryVO> getParseCacheEntries() {
+        return kmzParseCache.getEntries();
+    }
+
+    @Override
+    public int invalidateParseCache(String key) {
+        if (StringUtils.isEmpty(key)) {
+            return kmzParseCache.invalidateAll();
         }
-        return null;
+        return kmzParseCache.invalidate(key) ? 1 : 0;
+    }
+
+    @Override
+    public File findKmz(String buildId) {
+        return routeFileUtils.findKmz(buildId);
     }
 }
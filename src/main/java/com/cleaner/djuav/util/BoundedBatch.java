@@ -0,0 +1,103 @@
+package com.cleaner.djuav.util;
+
+import org.apache.commons.io.function.IOConsumer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 限制并发数的批量任务
+ *
+ * 任务在共用线程池中执行，同时进行中的任务不超过 maxInFlight 个，提交时已满则先等待并输出完成的结果；
+ * 结果按完成顺序在调用线程中回调（提交时顺带输出已完成的结果），回调无需考虑线程安全。
+ * 任务应自行捕获异常并体现在结果中，否则整个批次以 IOException 结束。
+ *
+ * @param <T> 任务结果
+ */
+public class BoundedBatch<T> implements Closeable {
+
+    private final CompletionService<T> completionService;
+
+    private final int maxInFlight;
+
+    private final IOConsumer<T> consumer;
+
+    private final Set<Future<T>> pending = new HashSet<>();
+
+    public BoundedBatch(ExecutorService executor, int maxInFlight, IOConsumer<T> consumer) {
+        this.completionService = new ExecutorCompletionService<>(executor);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.consumer = consumer;
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param task 任务
+     * @throws IOException 回调输出结果时的异常
+     */
+    public void submit(Callable<T> task) throws IOException {
+        while (pending.size() >= maxInFlight) {
+            emit(take());
+        }
+        pending.add(completionService.submit(task));
+        Future<T> done;
+        while ((done = completionService.poll()) != null) {
+            emit(done);
+        }
+    }
+
+    /**
+     * 等待所有任务完成并输出结果
+     *
+     * @throws IOException 回调输出结果时的异常
+     */
+    public void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            emit(take());
+        }
+    }
+
+    private Future<T> take() throws IOException {
+        try {
+            return completionService.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("批量任务被中断");
+        }
+    }
+
+    private void emit(Future<T> future) throws IOException {
+        pending.remove(future);
+        T result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("批量任务被中断");
+        } catch (ExecutionException e) {
+            throw new IOException("批量任务执行失败", e.getCause());
+        }
+        consumer.accept(result);
+    }
+
+    /**
+     * 取消未完成的任务，正常结束时应先调用 {@link #finish()}
+     */
+    @Override
+    public void close() {
+        for (Future<T> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+}
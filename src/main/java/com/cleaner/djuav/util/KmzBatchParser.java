@@ -0,0 +1,128 @@
+package com.cleaner.djuav.util;
+
+import com.cleaner.djuav.domain.KmzBatchParseVO;
+import com.cleaner.djuav.domain.KmzInfoVO;
+import com.cleaner.djuav.util.kml.KmzParseScope;
+import org.apache.commons.io.function.IOConsumer;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 批量解析 kmz 文件
+ *
+ * 每次批量请求创建一个实例，由 {@link BoundedBatch} 限制并发数，结果按完成顺序在调用线程中回调。
+ * 单个文件失败只记录在该文件的结果中，不影响其他文件。
+ * 上传的文件需要先写入临时文件才能并发解析，进行中的个数同时限制了临时文件的数量。
+ */
+public class KmzBatchParser implements Closeable {
+
+    private final BoundedBatch<KmzBatchParseVO> batch;
+
+    private final KmzParseScope scope;
+
+    private final RemoteFileClient remoteFileClient;
+
+    private final KmzParseCache parseCache;
+
+    private final ScratchFileManager scratchFileManager;
+
+    /**
+     * 序号 -> 尚未输出结果的上传文件
+     */
+    private final Map<Integer, ScratchFile> scratchFiles = new HashMap<>();
+
+    private int nextIndex;
+
+    public KmzBatchParser(ExecutorService executor, int maxInFlight, KmzParseScope scope,
+                          RemoteFileClient remoteFileClient, KmzParseCache parseCache, ScratchFileManager scratchFileManager,
+                          IOConsumer<KmzBatchParseVO> consumer) {
+        this.batch = new BoundedBatch<>(executor, maxInFlight, result -> {
+            scratchFiles.remove(result.getIndex());
+            consumer.accept(result);
+        });
+        this.scope = scope;
+        this.remoteFileClient = remoteFileClient;
+        this.parseCache = parseCache;
+        this.scratchFileManager = scratchFileManager;
+    }
+
+    /**
+     * 提交远程文件，边下载边解析，文件未变化时使用缓存的解析结果
+     *
+     * @param fileUrl 文件地址
+     * @throws IOException 回调输出结果时的异常
+     */
+    public void submitUrl(String fileUrl) throws IOException {
+        submit(fileUrl, () -> parseCache.parseKmz(remoteFileClient, fileUrl, scope));
+    }
+
+    /**
+     * 提交上传的文件：在调用线程中写入临时文件后再并发解析，解析完成后立即删除
+     *
+     * @param name        文件名
+     * @param inputStream 文件内容，返回前读完，不关闭
+     * @throws IOException 回调输出结果时的异常
+     */
+    public void submitUpload(String name, InputStream inputStream) throws IOException {
+        ScratchFile scratchFile = scratchFileManager.create(".kmz");
+        scratchFiles.put(nextIndex, scratchFile);
+        try {
+            scratchFile.write(inputStream);
+        } catch (IOException e) {
+            // 如临时空间不足，只影响这一个文件；请求流本身出错时读取下一个文件会再次抛出
+            scratchFile.close();
+            submit(name, () -> {
+                throw e;
+            });
+            return;
+        }
+        submit(name, () -> {
+            try (scratchFile) {
+                return RouteFileUtils.parseKmz(scratchFile.getFile(), scope, parseCache.getKmlParser());
+            }
+        });
+    }
+
+    private void submit(String source, Callable<KmzInfoVO> task) throws IOException {
+        int index = nextIndex++;
+        batch.submit(() -> {
+            KmzBatchParseVO result = new KmzBatchParseVO();
+            result.setIndex(index);
+            result.setSource(source);
+            try {
+                result.setKmzInfo(task.call());
+            } catch (Exception e) {
+                result.setError(ExceptionUtils.getRootCauseMessage(e));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 等待所有文件解析完成并输出结果
+     *
+     * @throws IOException 回调输出结果时的异常
+     */
+    public void finish() throws IOException {
+        batch.finish();
+    }
+
+    /**
+     * 取消未完成的解析并删除临时文件，正常结束时应先调用 {@link #finish()}
+     */
+    @Override
+    public void close() throws IOException {
+        batch.close();
+        for (ScratchFile scratchFile : scratchFiles.values()) {
+            scratchFile.close();
+        }
+        scratchFiles.clear();
+    }
+}
@@ -0,0 +1,629 @@
+package com.cleaner.djuav.util;
+
+import com.cleaner.djuav.domain.KmzInfoVO;
+import com.cleaner.djuav.domain.KmzParseCacheEntryVO;
+import com.cleaner.djuav.domain.KmzParseCacheStatsVO;
+import com.cleaner.djuav.domain.kml.KmlInfo;
+import com.cleaner.djuav.util.kml.KmlParser;
+import com.cleaner.djuav.util.kml.KmzParseScope;
+import com.cleaner.djuav.util.kml.LazyKmlFolder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.function.IOSupplier;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.ProxyOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * kmz 解析结果缓存
+ *
+ * 远程文件按 解析范围 + 地址 + ETag（没有时用 Last-Modified 与 Content-Length）缓存解析结果，
+ * 文件变化后 ETag 随之变化，旧条目不再命中并逐渐被淘汰；响应头中没有这些字段时不缓存。
+ * 按占用内存（字节）估算权重，总权重超过上限时淘汰最久未访问的条目（LRU）。
+ * 相同地址的并发请求只下载、解析一次，共用同一个结果（不缓存时也合并）。
+ * 缓存的 KmzInfoVO 由所有请求共用，调用方不能修改。
+ *
+ * 配置了磁盘目录时，下载的原始 kmz 连同 ETag、Last-Modified 按 解析范围 + 地址 边解析边另存一份到磁盘（同一地址只保留最新的一份），
+ * 不另外序列化解析结果；下次请求时发送条件请求（If-None-Match、If-Modified-Since），文件未变化（304）时不传输文件内容，
+ * 直接使用内存中的解析结果或重新解析磁盘上的 kmz（航点延迟解码）；重启后磁盘上的文件仍可使用。
+ * 磁盘文件数量或总大小超过上限时删除最久未使用的文件，单个文件超过总大小上限时不保存；不缓存（权重上限为 0）时不写磁盘。
+ */
+@Slf4j
+@Component
+public class KmzParseCache {
+
+    /**
+     * 权重上限（字节），0 表示不缓存
+     */
+    private final long maxWeight;
+
+    /**
+     * 非延迟解码的结果每个航点的估算字节数
+     */
+    private static final long PLACEMARK_WEIGHT = 1024;
+
+    /**
+     * 条目的最小权重（字节）
+     */
+    private static final long MIN_WEIGHT = 1024;
+
+    /**
+     * kml 解析引擎
+     */
+    private final KmlParser kmlParser;
+
+    /**
+     * 磁盘文件扩展名
+     */
+    private static final String DISK_FILE_SUFFIX = ".cache";
+
+    /**
+     * 按访问顺序排列，第一个是最久未访问的条目
+     */
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private final LongAdder uncacheableCount = new LongAdder();
+
+    private final LongAdder notModifiedCount = new LongAdder();
+
+    private final LongAdder diskHitCount = new LongAdder();
+
+    /**
+     * 正在下载、解析的文件：解析范围 + 地址
+     */
+    private final SingleFlight<String, KmzInfoVO> parseFlight = new SingleFlight<>();
+
+    /**
+     * 解析结果磁盘目录，为 null 时不保存到磁盘、不发送条件请求
+     */
+    private final Path diskDirectory;
+
+    /**
+     * 磁盘文件数量上限
+     */
+    private final int maxDiskCount;
+
+    /**
+     * 磁盘文件总大小上限（字节）
+     */
+    private final long maxDiskSize;
+
+    /**
+     * 磁盘文件（按 解析范围 + 地址 命名）及其中的缓存键、大小，按访问顺序排列，第一个是最久未使用的文件
+     */
+    private final LinkedHashMap<Path, DiskIndexEntry> diskKeys = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 磁盘文件总大小（字节）
+     */
+    private long diskSize;
+
+    /**
+     * 缓存键对应的磁盘文件
+     */
+    private final Map<String, Path> diskFiles = new HashMap<>();
+
+    public KmzParseCache(@Value("${wayline-parse-cache-max-size:256MB}") DataSize maxSize,
+                         @Value("${wayline-parse-cache-path:}") String diskDirectory,
+                         @Value("${wayline-parse-cache-disk-max-count:10000}") int maxDiskCount,
+                         @Value("${wayline-parse-cache-disk-max-size:2GB}") DataSize maxDiskSize,
+                         @Value("${wayline-file-parser:stax}") String parser) throws IOException {
+        this.kmlParser = KmlParser.of(parser);
+        this.maxWeight = Math.max(0, maxSize.toBytes());
+        this.maxDiskCount = Math.max(0, maxDiskCount);
+        this.maxDiskSize = Math.max(0, maxDiskSize.toBytes());
+        boolean diskEnabled = this.maxWeight > 0 && this.maxDiskCount > 0 && this.maxDiskSize > 0 && StringUtils.isNotBlank(diskDirectory);
+        this.diskDirectory = diskEnabled ? Files.createDirectories(Path.of(diskDirectory)) : null;
+        if (this.diskDirectory != null) {
+            loadDiskIndex();
+        }
+    }
+
+    /**
+     * 启动时读取磁盘目录中已有文件的缓存键，按修改时间从旧到新排列，超过上限的删除
+     */
+    private void loadDiskIndex() throws IOException {
+        // 旧版本保存的解析结果 JSON 不再使用
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(diskDirectory, "*.json")) {
+            stream.forEach(KmzParseCache::deleteDiskFile);
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(diskDirectory, "*" + DISK_FILE_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Map<Path, Long> modifiedTimes = new HashMap<>();
+        for (Path file : files) {
+            modifiedTimes.put(file, Files.getLastModifiedTime(file).toMillis());
+        }
+        files.sort(Comparator.comparing(modifiedTimes::get));
+        for (Path file : files) {
+            DiskEntry diskEntry = readDiskEntry(file);
+            if (diskEntry == null) {
+                deleteDiskFile(file);
+            } else {
+                indexDiskEntry(file, diskEntry.key, Files.size(file));
+            }
+        }
+    }
+
+    /**
+     * 读取并解析远程 kmz 文件，命中缓存时不读取响应体；同一文件正在解析时等待其结果
+     *
+     * @param remoteFileClient 远程文件读取
+     * @param fileUrl          文件地址
+     * @param scope            解析范围
+     * @return 解析结果
+     * @throws IOException 下载或解析失败
+     */
+    public KmzInfoVO parseKmz(RemoteFileClient remoteFileClient, String fileUrl, KmzParseScope scope) throws IOException {
+        String flightKey = scope + " " + fileUrl;
+        return parseFlight.execute(flightKey, () -> {
+            Path diskFile = diskDirectory == null ? null : diskDirectory.resolve(UUID.nameUUIDFromBytes(flightKey.getBytes(StandardCharsets.UTF_8)) + DISK_FILE_SUFFIX);
+            DiskEntry stored = readDiskEntry(diskFile);
+            if (stored != null) {
+                KmzInfoVO kmzInfoVO = remoteFileClient.read(fileUrl, stored.toConditionalHeaders(), (statusCode, headers, inputStream) -> {
+                    if (statusCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        return parse(fileUrl, scope, headers, inputStream, diskFile);
+                    }
+                    notModifiedCount.increment();
+                    touchDiskEntry(diskFile);
+                    return get(stored.key, () -> readDiskValue(diskFile, stored.key, scope));
+                });
+                if (kmzInfoVO != null) {
+                    return kmzInfoVO;
+                }
+                // 磁盘上的结果已损坏或被删除，重新完整下载
+            }
+            return remoteFileClient.read(fileUrl, (headers, inputStream) -> parse(fileUrl, scope, headers, inputStream, diskFile));
+        });
+    }
+
+    /**
+     * 解析响应体，有 ETag、Last-Modified 时加入缓存，并把原始 kmz 边解析边保存到磁盘
+     */
+    private KmzInfoVO parse(String fileUrl, KmzParseScope scope, HttpHeaders headers, InputStream inputStream, Path diskFile) throws IOException {
+        String key = urlKey(fileUrl, scope, headers);
+        return get(key, () -> {
+            if (key == null || diskFile == null) {
+                return RouteFileUtils.parseKmz(inputStream, scope, kmlParser);
+            }
+            return parseAndSave(diskFile, new DiskEntry(key, headers.firstValue("ETag").orElse(""),
+                    headers.firstValue("Last-Modified").orElse("")), inputStream, scope);
+        });
+    }
+
+    /**
+     * 远程文件的缓存键
+     *
+     * @return 缓存键，响应头中没有 ETag、Last-Modified 时返回 null
+     */
+    static String urlKey(String fileUrl, KmzParseScope scope, HttpHeaders headers) {
+        String validator = headers.firstValue("ETag").orElse(null);
+        if (validator == null) {
+            String lastModified = headers.firstValue("Last-Modified").orElse(null);
+            if (lastModified == null) {
+                return null;
+            }
+            validator = lastModified + "/" + headers.firstValue("Content-Length").orElse("");
+        }
+        return scope + " " + fileUrl + " " + validator;
+    }
+
+    public KmlParser getKmlParser() {
+        return kmlParser;
+    }
+
+    /**
+     * 查询缓存，未命中时加载并加入缓存
+     *
+     * @param key    缓存键，为 null 时不缓存
+     * @param loader 加载解析结果
+     * @return 解析结果
+     * @throws IOException 加载失败，失败的结果不缓存
+     */
+    public KmzInfoVO get(String key, IOSupplier<KmzInfoVO> loader) throws IOException {
+        if (maxWeight == 0) {
+            return loader.get();
+        }
+        if (key == null) {
+            uncacheableCount.increment();
+            return loader.get();
+        }
+        synchronized (this) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null) {
+                entry.hitCount++;
+                entry.lastAccessTime = System.currentTimeMillis();
+                hitCount.increment();
+                return entry.value;
+            }
+        }
+        missCount.increment();
+        // 在锁外解析，经 parseKmz 调用时同一文件的并发请求已合并
+        KmzInfoVO value = loader.get();
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    private synchronized void put(String key, KmzInfoVO value) {
+        CacheEntry entry = new CacheEntry(value, weigh(value));
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        CacheEntry previous = entries.put(key, entry);
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += entry.weight;
+        Iterator<CacheEntry> iterator = entries.values().iterator();
+        while (weight > maxWeight) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * 解析响应体，读取的原始字节同时写入磁盘临时文件，解析成功后原子移动到磁盘文件，读取方不会看到写了一半的文件
+     *
+     * 磁盘文件格式：前三行为缓存键、ETag、Last-Modified，之后是原始 kmz。
+     * 写入失败或超过磁盘总大小上限时停止写入、不保存，不影响解析结果
+     */
+    private KmzInfoVO parseAndSave(Path diskFile, DiskEntry entry, InputStream inputStream, KmzParseScope scope) throws IOException {
+        Path temp;
+        try {
+            temp = Files.createTempFile(diskFile.getParent(), ".", ".tmp");
+        } catch (IOException e) {
+            log.warn("保存 kmz 解析结果失败: {}", diskFile, e);
+            return RouteFileUtils.parseKmz(inputStream, scope, kmlParser);
+        }
+        try {
+            DiskOutputStream diskOutputStream = new DiskOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), maxDiskSize);
+            KmzInfoVO kmzInfoVO;
+            try (diskOutputStream) {
+                diskOutputStream.write((entry.key + "\n" + entry.etag + "\n" + entry.lastModified + "\n").getBytes(StandardCharsets.UTF_8));
+                InputStream teeInputStream = new TeeInputStream(inputStream, diskOutputStream);
+                kmzInfoVO = RouteFileUtils.parseKmz(teeInputStream, scope, kmlParser);
+                // 解析不一定读到文件末尾（如 zip 中央目录），剩余部分也要保存
+                IOUtils.consume(teeInputStream);
+            }
+            if (diskOutputStream.failure != null) {
+                log.warn("保存 kmz 解析结果失败: {}", diskFile, diskOutputStream.failure);
+                return kmzInfoVO;
+            }
+            try {
+                long size = Files.size(temp);
+                Files.move(temp, diskFile, StandardCopyOption.ATOMIC_MOVE);
+                indexDiskEntry(diskFile, entry.key, size);
+            } catch (IOException e) {
+                // 保存失败只影响下次请求不能使用条件请求
+                log.warn("保存 kmz 解析结果失败: {}", diskFile, e);
+            }
+            return kmzInfoVO;
+        } finally {
+            deleteDiskFile(temp);
+        }
+    }
+
+    /**
+     * 记录磁盘文件中的缓存键（替换同一文件中的旧键），文件数量或总大小超过上限时删除最久未使用的文件
+     */
+    private synchronized void indexDiskEntry(Path diskFile, String key, long size) {
+        DiskIndexEntry previous = diskKeys.put(diskFile, new DiskIndexEntry(key, size));
+        if (previous != null) {
+            diskFiles.remove(previous.key, diskFile);
+            diskSize -= previous.size;
+        }
+        diskFiles.put(key, diskFile);
+        diskSize += size;
+        Iterator<Map.Entry<Path, DiskIndexEntry>> iterator = diskKeys.entrySet().iterator();
+        while (diskKeys.size() > maxDiskCount || diskSize > maxDiskSize) {
+            Map.Entry<Path, DiskIndexEntry> eldest = iterator.next();
+            iterator.remove();
+            diskFiles.remove(eldest.getValue().key, eldest.getKey());
+            diskSize -= eldest.getValue().size;
+            deleteDiskFile(eldest.getKey());
+        }
+    }
+
+    /**
+     * 磁盘文件被使用，移到最近使用的位置
+     */
+    private synchronized void touchDiskEntry(Path diskFile) {
+        diskKeys.get(diskFile);
+    }
+
+    private static boolean deleteDiskFile(Path diskFile) {
+        try {
+            return Files.deleteIfExists(diskFile);
+        } catch (IOException e) {
+            log.warn("删除 kmz 解析结果失败: {}", diskFile, e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取磁盘文件的缓存键和验证字段，不读取 kmz
+     *
+     * @return 不存在或无法读取时返回 null
+     */
+    private static DiskEntry readDiskEntry(Path diskFile) {
+        if (diskFile == null || !Files.exists(diskFile)) {
+            return null;
+        }
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(diskFile))) {
+            return readDiskEntry(inputStream);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 读取前三行，之后的内容为 kmz
+     *
+     * @return 格式错误时返回 null
+     */
+    private static DiskEntry readDiskEntry(InputStream inputStream) throws IOException {
+        String key = readLine(inputStream);
+        String etag = readLine(inputStream);
+        String lastModified = readLine(inputStream);
+        if (key == null || lastModified == null || (etag.isEmpty() && lastModified.isEmpty())) {
+            return null;
+        }
+        return new DiskEntry(key, etag, lastModified);
+    }
+
+    /**
+     * 按字节读取一行，不预读之后的 kmz 内容
+     *
+     * @return 到达末尾时返回 null
+     */
+    private static String readLine(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = inputStream.read()) != '\n') {
+            if (b < 0) {
+                return null;
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解析磁盘文件中的 kmz
+     *
+     * @return 文件已被替换为其他版本、已删除或已损坏时返回 null（不加入缓存）
+     */
+    private KmzInfoVO readDiskValue(Path diskFile, String key, KmzParseScope scope) {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(diskFile))) {
+            DiskEntry entry = readDiskEntry(inputStream);
+            if (entry == null || !key.equals(entry.key)) {
+                return null;
+            }
+            KmzInfoVO kmzInfoVO = RouteFileUtils.parseKmz(inputStream, scope, kmlParser);
+            diskHitCount.increment();
+            return kmzInfoVO;
+        } catch (IOException | RuntimeException e) {
+            log.warn("读取 kmz 解析结果失败: {}", diskFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * 条目权重（字节）：kml、wpml 的原始字节数之和
+     *
+     * 延迟解码的 Folder 在航点解码前保留整个文件的原始字节，解码后释放原始字节、保留航点对象，两者大小相当，均按原始字节数计；
+     * 非延迟解码的结果按航点数估算
+     */
+    static long weigh(KmzInfoVO value) {
+        long weight = weigh(value.getKmlInfo()) + weigh(value.getWpmlInfo());
+        if (weight == 0 && value.getWaypointCount() != null) {
+            weight = value.getWaypointCount() * PLACEMARK_WEIGHT;
+        }
+        return Math.max(MIN_WEIGHT, weight);
+    }
+
+    private static long weigh(KmlInfo kmlInfo) {
+        if (kmlInfo != null && kmlInfo.getDocument() != null && kmlInfo.getDocument().getFolder() instanceof LazyKmlFolder lazyKmlFolder) {
+            return lazyKmlFolder.getContentLength();
+        }
+        return 0;
+    }
+
+    /**
+     * 删除缓存条目，同时删除磁盘上缓存键相同的解析结果（按索引查找，不扫描目录）
+     *
+     * @param key 缓存键
+     * @return 内存或磁盘上是否存在
+     */
+    public synchronized boolean invalidate(String key) {
+        boolean found = false;
+        CacheEntry entry = entries.remove(key);
+        if (entry != null) {
+            weight -= entry.weight;
+            found = true;
+        }
+        Path diskFile = diskFiles.remove(key);
+        if (diskFile != null) {
+            diskSize -= diskKeys.remove(diskFile).size;
+            found |= deleteDiskFile(diskFile);
+        }
+        return found;
+    }
+
+    /**
+     * 清空缓存，同时删除磁盘上的解析结果
+     *
+     * @return 删除的内存条目数
+     */
+    public synchronized int invalidateAll() {
+        int size = entries.size();
+        entries.clear();
+        weight = 0;
+        diskKeys.clear();
+        diskFiles.clear();
+        diskSize = 0;
+        if (diskDirectory != null) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDirectory, "*" + DISK_FILE_SUFFIX)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 缓存统计
+     */
+    public synchronized KmzParseCacheStatsVO getStats() {
+        KmzParseCacheStatsVO stats = new KmzParseCacheStatsVO();
+        stats.setMaxWeight(maxWeight);
+        stats.setWeight(weight);
+        stats.setSize(entries.size());
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        stats.setHitCount(hits);
+        stats.setMissCount(misses);
+        stats.setHitRate(hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        stats.setEvictionCount(evictionCount.sum());
+        stats.setUncacheableCount(uncacheableCount.sum());
+        stats.setInFlightCount(parseFlight.getInFlightCount());
+        stats.setSharedCount(parseFlight.getSharedCount());
+        stats.setNotModifiedCount(notModifiedCount.sum());
+        stats.setDiskHitCount(diskHitCount.sum());
+        return stats;
+    }
+
+    /**
+     * 缓存条目，按访问顺序排列，最久未访问的在前
+     */
+    public synchronized List<KmzParseCacheEntryVO> getEntries() {
+        List<KmzParseCacheEntryVO> list = new ArrayList<>(entries.size());
+        for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+            KmzParseCacheEntryVO vo = new KmzParseCacheEntryVO();
+            vo.setKey(entry.getKey());
+            vo.setWeight(entry.getValue().weight);
+            vo.setHitCount(entry.getValue().hitCount);
+            vo.setCreateTime(entry.getValue().createTime);
+            vo.setLastAccessTime(entry.getValue().lastAccessTime);
+            list.add(vo);
+        }
+        return list;
+    }
+
+    /**
+     * 磁盘文件中的缓存键和验证字段，ETag、Last-Modified 没有时为空字符串
+     */
+    private record DiskEntry(String key, String etag, String lastModified) {
+
+        Map<String, String> toConditionalHeaders() {
+            Map<String, String> headers = new LinkedHashMap<>();
+            if (!etag.isEmpty()) {
+                headers.put("If-None-Match", etag);
+            }
+            if (!lastModified.isEmpty()) {
+                headers.put("If-Modified-Since", lastModified);
+            }
+            return headers;
+        }
+    }
+
+    /**
+     * 磁盘文件索引：文件中的缓存键、文件大小
+     */
+    private record DiskIndexEntry(String key, long size) {
+    }
+
+    /**
+     * 磁盘临时文件输出流：写入失败或超过大小上限时记录异常并停止写入，不向读取方抛出
+     */
+    private static class DiskOutputStream extends ProxyOutputStream {
+
+        private final long maxSize;
+
+        private long size;
+
+        private IOException failure;
+
+        DiskOutputStream(OutputStream outputStream, long maxSize) {
+            super(outputStream);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected void beforeWrite(int n) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            size += n;
+            if (size > maxSize) {
+                throw new IOException("超过磁盘文件总大小上限");
+            }
+        }
+
+        @Override
+        protected void handleIOException(IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    private static class CacheEntry {
+
+        private final KmzInfoVO value;
+
+        private final long weight;
+
+        private final long createTime = System.currentTimeMillis();
+
+        private long lastAccessTime = createTime;
+
+        private long hitCount;
+
+        CacheEntry(KmzInfoVO value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
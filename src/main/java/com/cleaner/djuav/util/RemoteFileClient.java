@@ -0,0 +1,318 @@
+package com.cleaner.djuav.util;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.function.IOBiFunction;
+import org.apache.commons.io.function.IOFunction;
+import org.apache.commons.io.function.IOTriFunction;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 远程文件读取
+ *
+ * 所有请求共用一个 HttpClient，同一对象存储的并发请求复用连接；响应体以输入流交给调用方边下载边处理，不落盘。
+ * 读取前按 Content-Length、读取中按已读字节数检查文件大小上限。
+ * 读取超时同时限制等待响应头和读取响应体时每次等待数据的时间，服务端中途停止发送时不会一直阻塞。
+ */
+@Component
+public class RemoteFileClient {
+
+    /**
+     * 处理完成后剩余内容不超过该值时读完，连接可放回连接池；否则直接断开
+     */
+    private static final long DRAIN_LIMIT = 64 * 1024;
+
+    private final HttpClient httpClient;
+
+    /**
+     * 等待响应头、读取响应体时等待数据的超时时间
+     */
+    private final Duration readTimeout;
+
+    /**
+     * 文件大小上限（字节）
+     */
+    private final long maxSize;
+
+    public RemoteFileClient(@Value("${wayline-download-connect-timeout:5s}") Duration connectTimeout,
+                            @Value("${wayline-download-read-timeout:30s}") Duration readTimeout,
+                            @Value("${wayline-download-max-size:200MB}") DataSize maxSize) {
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(Executors.newCachedThreadPool(ThreadFactoryBuilder.create().setNamePrefix("remote-file-").setDaemon(true).build()))
+                .build();
+        this.readTimeout = readTimeout;
+        this.maxSize = maxSize.toBytes();
+    }
+
+    /**
+     * 读取远程文件
+     *
+     * @param url     文件地址
+     * @param handler 处理响应体，返回前无需读完；输入流由本方法关闭
+     * @return handler 的返回值
+     * @throws IOException 连接失败、超时、状态码不是 2xx、超过大小上限或 handler 抛出的异常
+     */
+    public <T> T read(String url, IOFunction<InputStream, T> handler) throws IOException {
+        return read(url, (headers, inputStream) -> handler.apply(inputStream));
+    }
+
+    /**
+     * 读取远程文件，处理时可使用响应头（如按 ETag 查询缓存，命中时不读取响应体）
+     *
+     * @param url     文件地址
+     * @param handler 处理响应头和响应体，返回前无需读完；输入流由本方法关闭
+     * @return handler 的返回值
+     * @throws IOException 连接失败、超时、状态码不是 2xx、超过大小上限或 handler 抛出的异常
+     */
+    public <T> T read(String url, IOBiFunction<HttpHeaders, InputStream, T> handler) throws IOException {
+        return read(url, Map.of(), (statusCode, headers, inputStream) -> handler.apply(headers, inputStream));
+    }
+
+    /**
+     * 读取远程文件，可发送条件请求
+     *
+     * @param url            文件地址
+     * @param requestHeaders 附加的请求头，如 If-None-Match、If-Modified-Since
+     * @param handler        处理状态码、响应头和响应体，返回前无需读完；输入流由本方法关闭。
+     *                       发送了附加请求头且状态码为 304（文件未变化）时同样交给 handler，响应体为空
+     * @return handler 的返回值
+     * @throws IOException 连接失败、超时、状态码不是 2xx（或 304）、超过大小上限或 handler 抛出的异常
+     */
+    public <T> T read(String url, Map<String, String> requestHeaders,
+                      IOTriFunction<Integer, HttpHeaders, InputStream, T> handler) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(readTimeout)
+                .GET();
+        requestHeaders.forEach(builder::header);
+        HttpRequest request = builder.build();
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, responseInfo -> new TimeoutBodySubscriber(readTimeout, url));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("下载文件被中断: " + url);
+        }
+        try (InputStream body = response.body()) {
+            boolean notModified = response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED && !requestHeaders.isEmpty();
+            if (response.statusCode() / 100 != 2 && !notModified) {
+                throw new IOException("下载文件失败，状态码: " + response.statusCode() + "，地址: " + url);
+            }
+            long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            if (contentLength > maxSize) {
+                throw new IOException("文件大小 " + contentLength + " 超过上限 " + maxSize + "，地址: " + url);
+            }
+            LimitedInputStream inputStream = new LimitedInputStream(body, maxSize, url);
+            T result = handler.apply(response.statusCode(), response.headers(), CloseShieldInputStream.wrap(inputStream));
+            // 剩余内容（如 zip 中央目录）较小时读完，保持连接可复用
+            IOUtils.copyLarge(inputStream, NullOutputStream.INSTANCE, 0, DRAIN_LIMIT);
+            return result;
+        }
+    }
+
+    /**
+     * 响应体输入流：等待数据超过超时时间时取消下载并抛出 {@link HttpTimeoutException}
+     *
+     * HttpClient 自带的 BodyHandlers.ofInputStream 等待数据时不限时间，也不响应中断，这里按超时时间等待；
+     * 每次只向 HttpClient 请求一批数据，读取方处理完后再请求下一批
+     */
+    private static class TimeoutBodySubscriber extends InputStream implements HttpResponse.BodySubscriber<InputStream> {
+
+        /**
+         * 下载结束（完成或失败）的标记
+         */
+        private static final List<ByteBuffer> END = Collections.unmodifiableList(new ArrayList<>());
+
+        private final BlockingQueue<List<ByteBuffer>> buffers = new LinkedBlockingQueue<>();
+
+        private final long timeoutNanos;
+
+        private final String url;
+
+        private volatile Flow.Subscription subscription;
+
+        private volatile Throwable failure;
+
+        private Iterator<ByteBuffer> batch = Collections.emptyIterator();
+
+        private ByteBuffer buffer;
+
+        private boolean finished;
+
+        private boolean closed;
+
+        TimeoutBodySubscriber(Duration timeout, String url) {
+            this.timeoutNanos = timeout.toNanos();
+            this.url = url;
+        }
+
+        @Override
+        public CompletionStage<InputStream> getBody() {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            buffers.offer(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure = throwable;
+            buffers.offer(END);
+        }
+
+        @Override
+        public void onComplete() {
+            buffers.offer(END);
+        }
+
+        /**
+         * 当前可读的数据，没有时等待下一批
+         *
+         * @return 已读完时返回 null
+         */
+        private ByteBuffer current() throws IOException {
+            while (buffer == null || !buffer.hasRemaining()) {
+                if (batch.hasNext()) {
+                    buffer = batch.next();
+                    continue;
+                }
+                if (closed) {
+                    throw new IOException("输入流已关闭，地址: " + url);
+                }
+                if (finished) {
+                    if (failure != null) {
+                        throw new IOException("下载文件失败，地址: " + url, failure);
+                    }
+                    return null;
+                }
+                List<ByteBuffer> item;
+                try {
+                    item = buffers.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("下载文件被中断: " + url);
+                }
+                if (item == null) {
+                    close();
+                    throw new HttpTimeoutException("读取文件超时，" + Duration.ofNanos(timeoutNanos) + " 内没有收到数据，地址: " + url);
+                }
+                if (item == END) {
+                    finished = true;
+                    continue;
+                }
+                batch = item.iterator();
+                subscription.request(1);
+            }
+            return buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer current = current();
+            return current == null ? -1 : current.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer current = current();
+            if (current == null) {
+                return -1;
+            }
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer == null ? 0 : buffer.remaining();
+        }
+
+        /**
+         * 未读完时取消下载，连接不再复用
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Flow.Subscription current = subscription;
+            if (!finished && current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    /**
+     * 超过大小上限时抛出异常的输入流
+     */
+    private static class LimitedInputStream extends ProxyInputStream {
+
+        private final long maxSize;
+
+        private final String url;
+
+        private long count;
+
+        LimitedInputStream(InputStream inputStream, long maxSize, String url) {
+            super(inputStream);
+            this.maxSize = maxSize;
+            this.url = url;
+        }
+
+        @Override
+        protected void afterRead(int n) throws IOException {
+            if (n > 0) {
+                count += n;
+                if (count > maxSize) {
+                    throw new IOException("文件大小超过上限 " + maxSize + "，地址: " + url);
+                }
+            }
+        }
+    }
+}
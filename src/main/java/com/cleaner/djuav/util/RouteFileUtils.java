@@ -2,27 +2,69 @@ package com.cleaner.djuav.util;
 
 import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.date.DateUtil;
-import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.file.FileNameUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.ObjectUtil;
 import com.cleaner.djuav.constant.FileTypeConstants;
 import com.cleaner.djuav.domain.*;
 import com.cleaner.djuav.domain.kml.*;
 import com.cleaner.djuav.enums.kml.*;
+import com.cleaner.djuav.util.kml.KmlNumberFormat;
+import com.cleaner.djuav.util.kml.KmlParser;
+import com.cleaner.djuav.util.kml.KmlPatch;
+import com.cleaner.djuav.util.kml.KmlPlacemarkVisitor;
+import com.cleaner.djuav.util.kml.KmlStreamPatcher;
+import com.cleaner.djuav.util.kml.KmlStreamReader;
+import com.cleaner.djuav.util.kml.KmlStreamWriter;
+import com.cleaner.djuav.util.kml.KmzArchive;
+import com.cleaner.djuav.util.kml.KmzCompression;
+import com.cleaner.djuav.util.kml.KmzEntry;
+import com.cleaner.djuav.util.kml.KmzParseScope;
+import com.cleaner.djuav.util.kml.LazyKmlFolder;
+import com.cleaner.djuav.util.kml.PlacemarkCountingInputStream;
+import com.cleaner.djuav.util.kml.RoutePlacemarkList;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.io.xml.DomDriver;
+import jakarta.annotation.Resource;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.function.IOConsumer;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.output.ProxyOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.xml.stream.XMLStreamException;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 /**
  * 航线文件操作工具类
@@ -34,19 +76,19 @@ import java.util.zip.ZipOutputStream;
  *
  * 主要功能：
  * - buildKmz: 生成完整的KMZ航线文件
- * - parseKml: 解析KML/WPML文件内容
+ * - parseKml: 解析KML/WPML文件内容（StAX 流式解析，可切换为 XStream）
+ * - parseKmz: 按 zip 中央目录随机读取并并行解析KMZ文件
+ * - visitKmz: 逐个航点解析KMZ文件，内存占用与航点数量无关
  * - buildKmlDocument: 构建KML文档结构
  * - buildKmlMissionConfig: 构建航线任务配置
  * - buildKmlFolder: 构建航线文件夹信息
+ *
+ * 输出格式、压缩策略、数值精度、解析引擎等配置保存在实例中，静态方法只使用参数传入的配置，
+ * 未传入时使用默认配置，多个实例（如测试中创建的）互不影响。
  */
 @Component
 public class RouteFileUtils {
 
-    /**
-     * XML 头部
-     */
-    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
-
     /**
      * 生成的本地 kmz 文件存储路径
      */
@@ -54,13 +96,231 @@ public class RouteFileUtils {
     public String LOCAL_KMZ_FILE_PATH;
 
 
+    /**
+     * 未指定文件名时生成的 kmz 文件名
+     */
+    public static final String DEFAULT_KMZ_FILE_NAME = "航线kmz文件";
+
+    /**
+     * 生成编号格式
+     */
+    private static final Pattern BUILD_ID_PATTERN = Pattern.compile("[0-9a-f]{32}");
+
+    /**
+     * 正在按内容编号生成的 kmz 文件
+     */
+    private final SingleFlight<String, KmzBuildVO> buildFlight = new SingleFlight<>();
+
+    /**
+     * 内容编号算法版本，kmz 输出格式变化时递增，使旧文件不再命中
+     */
+    private static final int CONTENT_KEY_VERSION = 1;
+
+    /**
+     * 计算内容编号时规范化请求参数：属性按名称排序，忽略空值，忽略不影响 kmz 内容的属性
+     */
+    private static final ObjectMapper CANONICAL_MAPPER = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .addMixIn(UavRouteReq.class, ContentKeyMixIn.class)
+            .build();
+
+    /**
+     * 文件名、编辑时的原文件不写入 kmz，不参与内容编号的计算
+     */
+    @JsonIgnoreProperties({"fileName", "buildId", "fileUrl"})
+    private interface ContentKeyMixIn {
+    }
+
+    /**
+     * kmz 中的 kml 条目名称
+     */
+    private static final String KML_ENTRY_NAME = "wpmz/template.kml";
+
+    /**
+     * kmz 中的 wpml 条目名称
+     */
+    private static final String WPML_ENTRY_NAME = "wpmz/waylines.wpml";
+
+    /**
+     * 并行构建 kml、wpml 的线程池（守护线程，所有请求共用）
+     */
+    private static final ExecutorService BUILD_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            ThreadFactoryBuilder.create().setNamePrefix("kmz-build-").setDaemon(true).build());
+
+    /**
+     * kmz 条目默认压缩策略
+     */
+    private KmzCompression kmzCompression = KmzCompression.STORE;
+
+    /**
+     * 配置 kmz 条目默认压缩策略：store（默认，不压缩）、deflate[:级别]、auto[:阈值[:级别]]
+     */
+    @Value("${wayline-kmz-compression:store}")
+    public void setCompression(String compression) {
+        kmzCompression = KmzCompression.parse(compression);
+    }
+
+    /**
+     * 并行构建 kml、wpml 的航点数量阈值，负数表示不并行
+     */
+    private int parallelThreshold = -1;
+
+    /**
+     * 并行构建时 waylines.wpml 压缩数据的临时文件，未设置时不并行
+     */
+    private ScratchFileManager scratchFileManager;
+
+    /**
+     * 配置并行构建阈值：航点数量达到该值时 kml、wpml 并行构建，负数（默认）表示不并行
+     */
+    @Value("${wayline-parallel-threshold:-1}")
+    public void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold;
+    }
+
+    @Resource
+    public void setScratchFileManager(ScratchFileManager manager) {
+        scratchFileManager = manager;
+    }
+
+    /**
+     * kml 解析引擎（默认使用 StAX 流式解析）
+     */
+    private KmlParser kmlParser = KmlParser.STAX;
+
+    /**
+     * 配置 kml 解析引擎：stax（默认）或 xstream
+     */
+    @Value("${wayline-file-parser:stax}")
+    public void setParser(String parser) {
+        kmlParser = KmlParser.of(parser);
+    }
+
+    public KmlParser getKmlParser() {
+        return kmlParser;
+    }
+
+    /**
+     * 是否紧凑输出 kml 文件（不缩进、不换行）
+     */
+    private boolean compactXml;
+
+    /**
+     * 配置 kml 文件输出格式：false（默认，与 XStream 格式一致的缩进输出）或 true（紧凑输出）
+     */
+    @Value("${wayline-file-compact:false}")
+    public void setCompact(boolean compact) {
+        compactXml = compact;
+    }
+
+    /**
+     * 构建航线时的数值格式
+     */
+    private KmlNumberFormat numberFormat = KmlNumberFormat.DEFAULT;
+
+    /**
+     * 配置经纬度小数位数，默认 8 位；负数表示最短往返表示
+     */
+    @Value("${wayline-coordinate-precision:8}")
+    public void setCoordinatePrecision(int precision) {
+        numberFormat = numberFormat.withPrecision(KmlNumberFormat.Field.COORDINATE, precision);
+    }
+
+    /**
+     * 配置高度小数位数，默认最短往返表示
+     */
+    @Value("${wayline-height-precision:-1}")
+    public void setHeightPrecision(int precision) {
+        numberFormat = numberFormat.withPrecision(KmlNumberFormat.Field.HEIGHT, precision);
+    }
+
+    /**
+     * 配置速度小数位数，默认 1 位
+     */
+    @Value("${wayline-speed-precision:1}")
+    public void setSpeedPrecision(int precision) {
+        numberFormat = numberFormat.withPrecision(KmlNumberFormat.Field.SPEED, precision);
+    }
+
+    /**
+     * 配置角度小数位数，默认最短往返表示
+     */
+    @Value("${wayline-angle-precision:-1}")
+    public void setAnglePrecision(int precision) {
+        numberFormat = numberFormat.withPrecision(KmlNumberFormat.Field.ANGLE, precision);
+    }
+
     /**
      * kml文件解析
      *
+     * 使用 StAX 流式解析，直接由 XML 事件构建对象，结果与 XStream 一致
+     *
      * @param inputStream KML文件输入流
      * @return KmlInfo 解析后的KML信息对象
      */
     public static KmlInfo parseKml(InputStream inputStream) {
+        return parseKml(inputStream, KmlParser.STAX);
+    }
+
+    /**
+     * kml文件解析
+     *
+     * @param inputStream KML文件输入流
+     * @param parser      解析引擎，配置 wayline-file-parser=xstream 时退回 XStream 解析
+     * @return KmlInfo 解析后的KML信息对象
+     */
+    public static KmlInfo parseKml(InputStream inputStream, KmlParser parser) {
+        if (parser == KmlParser.XSTREAM) {
+            return parseKmlByXStream(inputStream);
+        }
+        try {
+            return KmlStreamReader.read(inputStream);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("kml文件解析失败", e);
+        }
+    }
+
+    /**
+     * kml文件解析（航点延迟解码）
+     *
+     * 只解码文件头和 Folder 全局参数，航点在第一次访问或序列化时才解码，
+     * 适用于只关心 missionConfig、templateType、autoFlightSpeed 等字段的场景
+     *
+     * @param inputStream KML文件输入流
+     * @return KmlInfo 解析后的KML信息对象
+     */
+    public static KmlInfo parseKmlLazily(InputStream inputStream) {
+        return parseKmlLazily(inputStream, KmlParser.STAX);
+    }
+
+    /**
+     * kml文件解析（航点延迟解码）
+     *
+     * @param inputStream KML文件输入流
+     * @param parser      解析引擎，XStream 不支持延迟解码，解析全部航点
+     * @return KmlInfo 解析后的KML信息对象
+     */
+    public static KmlInfo parseKmlLazily(InputStream inputStream, KmlParser parser) {
+        if (parser == KmlParser.XSTREAM) {
+            return parseKmlByXStream(inputStream);
+        }
+        try {
+            return LazyKmlFolder.parse(inputStream.readAllBytes());
+        } catch (XMLStreamException | IOException e) {
+            throw new RuntimeException("kml文件解析失败", e);
+        }
+    }
+
+    /**
+     * kml文件解析（XStream 实现）
+     *
+     * @param inputStream KML文件输入流
+     * @return KmlInfo 解析后的KML信息对象
+     */
+    public static KmlInfo parseKmlByXStream(InputStream inputStream) {
         // 创建XStream对象，用于XML与Java对象间的序列化和反序列化
         XStream xStream = new XStream();
 
@@ -92,17 +352,290 @@ public class RouteFileUtils {
         return kmlInfo;
     }
 
+    /**
+     * 解析 kmz 文件（航点延迟解码）
+     *
+     * 通过 zip 中央目录直接定位 template.kml、waylines.wpml，两个文件并行解码，
+     * wpmz/res/ 下的资源文件不读取
+     *
+     * @param file kmz 文件
+     * @return 解析结果，文件中不存在的部分为 null
+     * @throws IOException IO异常或文件格式错误
+     */
+    public static KmzInfoVO parseKmz(File file) throws IOException {
+        return parseKmz(file, KmzParseScope.FULL, KmlParser.STAX);
+    }
+
+    /**
+     * 按解析范围解析 kmz 文件（航点延迟解码）
+     *
+     * 范围之外的文件不读取；MISSION_CONFIG 只解码 template.kml 的文件头，之后的内容只按字节统计航点数量
+     *
+     * @param file  kmz 文件
+     * @param scope 解析范围
+     * @return 解析结果，范围之外以及文件中不存在的部分为 null
+     * @throws IOException IO异常或文件格式错误
+     */
+    public static KmzInfoVO parseKmz(File file, KmzParseScope scope) throws IOException {
+        return parseKmz(file, scope, KmlParser.STAX);
+    }
+
+    /**
+     * 按解析范围和解析引擎解析 kmz 文件
+     *
+     * @param file   kmz 文件
+     * @param scope  解析范围
+     * @param parser 解析引擎，MISSION_CONFIG 始终使用 StAX 只解码文件头
+     * @return 解析结果，范围之外以及文件中不存在的部分为 null
+     * @throws IOException IO异常或文件格式错误
+     */
+    public static KmzInfoVO parseKmz(File file, KmzParseScope scope, KmlParser parser) throws IOException {
+        try (KmzArchive kmzArchive = KmzArchive.open(file)) {
+            if (scope == KmzParseScope.MISSION_CONFIG) {
+                return parseMissionConfig(kmzArchive);
+            }
+            boolean kml = scope.includesKml() && kmzArchive.hasKml();
+            boolean wpml = scope.includesWpml() && kmzArchive.hasWpml();
+            // 两个文件都需要时 wpml 在线程池中并行解码
+            Future<KmlInfo> wpmlInfo = kml && wpml
+                    ? BUILD_EXECUTOR.submit(() -> parseEntryLazily(kmzArchive.openWpml(), parser))
+                    : null;
+            try {
+                KmzInfoVO kmzInfoVO = new KmzInfoVO();
+                if (kml) {
+                    kmzInfoVO.setKmlInfo(parseEntryLazily(kmzArchive.openKml(), parser));
+                }
+                if (wpml) {
+                    kmzInfoVO.setWpmlInfo(wpmlInfo != null ? getBuildResult(wpmlInfo) : parseEntryLazily(kmzArchive.openWpml(), parser));
+                }
+                kmzInfoVO.setWaypointCount(getPlacemarkCount(kml ? kmzInfoVO.getKmlInfo() : kmzInfoVO.getWpmlInfo()));
+                return kmzInfoVO;
+            } finally {
+                // kml 解码出错时也要等 wpml 读取结束，再关闭文件
+                awaitQuietly(wpmlInfo);
+            }
+        }
+    }
+
+    /**
+     * 只解码文件头：读到第一个 Placemark 即停止 XML 解析，剩余内容只按字节统计航点数量；
+     * 缺少 template.kml 时改为读取 waylines.wpml
+     */
+    private static KmzInfoVO parseMissionConfig(KmzArchive kmzArchive) throws IOException {
+        KmzInfoVO kmzInfoVO = new KmzInfoVO();
+        boolean kml = kmzArchive.hasKml();
+        if (!kml && !kmzArchive.hasWpml()) {
+            return kmzInfoVO;
+        }
+        try (InputStream inputStream = kml ? kmzArchive.openKml() : kmzArchive.openWpml()) {
+            parseMissionConfig(inputStream, kml ? FileTypeConstants.KML : FileTypeConstants.WPML, kmzInfoVO);
+        }
+        return kmzInfoVO;
+    }
+
+    /**
+     * 解码文件头并统计航点数量，结果写入 kmzInfoVO，不关闭输入流
+     */
+    private static void parseMissionConfig(InputStream inputStream, String fileType, KmzInfoVO kmzInfoVO) throws IOException {
+        PlacemarkCountingInputStream countingInputStream = new PlacemarkCountingInputStream(inputStream);
+        try {
+            KmlInfo header = KmlStreamReader.read(countingInputStream, fileType, new KmlPlacemarkVisitor() {
+                @Override
+                public boolean continueAfterHeader(String fileType) {
+                    return false;
+                }
+
+                @Override
+                public void onPlacemark(String fileType, KmlPlacemark placemark) {
+                }
+            });
+            if (FileTypeConstants.KML.equals(fileType)) {
+                kmzInfoVO.setKmlInfo(header);
+            } else {
+                kmzInfoVO.setWpmlInfo(header);
+            }
+            kmzInfoVO.setWaypointCount(countingInputStream.countToEnd());
+        } catch (XMLStreamException e) {
+            throw new IOException("kml文件解析失败", e);
+        }
+    }
+
+    /**
+     * 按解析范围从输入流解析 kmz 文件（航点延迟解码），用于边下载边解析
+     *
+     * 按本地文件头顺序读取条目，范围之外的条目直接跳过；与 {@link #parseKmz(File, KmzParseScope)} 结果一致，
+     * 只是两个文件依次解码。MISSION_CONFIG 在 waylines.wpml 先于 template.kml 出现时，以 template.kml 为准
+     *
+     * @param inputStream kmz 文件输入流，读到最后一个条目为止，读取完成后关闭
+     * @param scope       解析范围
+     * @return 解析结果，范围之外以及文件中不存在的部分为 null
+     * @throws IOException IO异常或文件格式错误
+     */
+    public static KmzInfoVO parseKmz(InputStream inputStream, KmzParseScope scope) throws IOException {
+        return parseKmz(inputStream, scope, KmlParser.STAX);
+    }
+
+    /**
+     * 按解析范围和解析引擎从输入流解析 kmz 文件
+     *
+     * @param inputStream kmz 文件输入流，读到最后一个条目为止，读取完成后关闭
+     * @param scope       解析范围
+     * @param parser      解析引擎，MISSION_CONFIG 始终使用 StAX 只解码文件头
+     * @return 解析结果，范围之外以及文件中不存在的部分为 null
+     * @throws IOException IO异常或文件格式错误
+     */
+    public static KmzInfoVO parseKmz(InputStream inputStream, KmzParseScope scope, KmlParser parser) throws IOException {
+        KmzInfoVO kmzInfoVO = new KmzInfoVO();
+        try (ZipArchiveInputStream zipInputStream = new ZipArchiveInputStream(inputStream, StandardCharsets.UTF_8.name(), true, true)) {
+            ZipArchiveEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                String fileType = getFileType(entry.getName());
+                if (fileType == null) {
+                    continue;
+                }
+                boolean kml = FileTypeConstants.KML.equals(fileType);
+                if (scope == KmzParseScope.MISSION_CONFIG) {
+                    if (kml ? kmzInfoVO.getKmlInfo() == null : kmzInfoVO.getKmlInfo() == null && kmzInfoVO.getWpmlInfo() == null) {
+                        kmzInfoVO.setWpmlInfo(null);
+                        parseMissionConfig(zipInputStream, fileType, kmzInfoVO);
+                    }
+                } else if (kml && scope.includesKml() && kmzInfoVO.getKmlInfo() == null) {
+                    kmzInfoVO.setKmlInfo(parseKmlLazily(zipInputStream, parser));
+                } else if (!kml && scope.includesWpml() && kmzInfoVO.getWpmlInfo() == null) {
+                    kmzInfoVO.setWpmlInfo(parseKmlLazily(zipInputStream, parser));
+                }
+            }
+        }
+        if (scope != KmzParseScope.MISSION_CONFIG) {
+            kmzInfoVO.setWaypointCount(getPlacemarkCount(kmzInfoVO.getKmlInfo() != null ? kmzInfoVO.getKmlInfo() : kmzInfoVO.getWpmlInfo()));
+        }
+        return kmzInfoVO;
+    }
+
+    /**
+     * 航点数量，延迟解码的 Folder 无需解码航点
+     */
+    public static Integer getPlacemarkCount(KmlInfo kmlInfo) {
+        if (kmlInfo == null || kmlInfo.getDocument() == null || kmlInfo.getDocument().getFolder() == null) {
+            return null;
+        }
+        KmlFolder folder = kmlInfo.getDocument().getFolder();
+        if (folder instanceof LazyKmlFolder lazyKmlFolder) {
+            return lazyKmlFolder.getPlacemarkCount();
+        }
+        return folder.getPlacemarkList() == null ? 0 : folder.getPlacemarkList().size();
+    }
+
+    private static void awaitQuietly(Future<?> future) {
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // 异常已由 getBuildResult 抛出，或者以 kml 的异常为准
+        }
+    }
+
+    private static KmlInfo parseEntryLazily(InputStream inputStream, KmlParser parser) throws IOException {
+        try (inputStream) {
+            return parseKmlLazily(inputStream, parser);
+        }
+    }
+
+    /**
+     * 逐个航点解析 kmz 文件
+     *
+     * 依次读取 kmz 中的 kml、wpml 文件，先回调文件头，再每解码出一个航点回调一次，
+     * 航点不会在 KmlFolder 中累积，适用于超大航线的统计、导出、校验
+     *
+     * @param inputStream kmz 文件输入流，读取完成后关闭
+     * @param visitor     航点回调
+     * @throws IOException IO异常或文件格式错误
+     */
+    public static void visitKmz(InputStream inputStream, KmlPlacemarkVisitor visitor) throws IOException {
+        try (ArchiveInputStream<ZipArchiveEntry> archiveInputStream = new ZipArchiveInputStream(inputStream)) {
+            ArchiveEntry entry;
+            while (!Objects.isNull(entry = archiveInputStream.getNextEntry())) {
+                String fileType = getFileType(entry.getName());
+                if (fileType != null) {
+                    KmlStreamReader.read(archiveInputStream, fileType, visitor);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("kml文件解析失败", e);
+        }
+    }
+
+    /**
+     * 根据 kmz 条目名称判断文件类型
+     *
+     * @param name 条目名称
+     * @return 文件类型 (KML 或 WPML)，其他文件返回 null
+     */
+    public static String getFileType(String name) {
+        String lowerName = name.toLowerCase();
+        if (lowerName.endsWith(".kml")) {
+            return FileTypeConstants.KML;
+        }
+        if (lowerName.endsWith(".wpml")) {
+            return FileTypeConstants.WPML;
+        }
+        return null;
+    }
+
     /**
      * 生成航线 KMZ 文件 (主入口方法)
      *
      * @param fileName  文件名
      * @param kmlParams 参数对象，包含航线的所有配置信息
-     * @return 本地文件路径，指向生成的KMZ文件
+     * @return 生成的KMZ文件
+     */
+    public KmzBuildVO buildKmz(String fileName, KmlParams kmlParams) {
+        try {
+            return saveKmz(fileName, fileOutputStream -> writeKmz(fileOutputStream, kmlParams, kmzCompression));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 生成航线 KMZ 文件并直接写入输出流（如 HTTP 响应），不经过本地文件
+     *
+     * 指定内容编号时同时按编号保存到本地目录：相同编号的文件已存在时直接输出已有文件，不重新生成；
+     * 相同编号正在生成时等待其完成后输出生成的文件
+     *
+     * @param buildId      内容编号，见 {@link #contentKey(Object, KmzCompression)}，为 null 时不保存
+     * @param fileName     文件名，保存到本地时使用
+     * @param kmlParams    参数对象，包含航线的所有配置信息
+     * @param outputStream 输出流，写完后只刷新不关闭
+     * @param compression  压缩策略，为 null 时使用配置的默认策略
+     * @return 保存到本地的KMZ文件，不保存时返回 null
+     * @throws IOException IO异常
      */
-    public String buildKmz(String fileName, KmlParams kmlParams) {
-        KmlInfo kmlInfo = buildKml(kmlParams);
-        KmlInfo wpmlInfo = buildWpml(kmlParams);
-        return buildKmz(fileName, kmlInfo, wpmlInfo);
+    public KmzBuildVO buildKmz(String buildId, String fileName, KmlParams kmlParams, OutputStream outputStream, KmzCompression compression) throws IOException {
+        KmzCompression kmzCompression = ObjectUtil.defaultIfNull(compression, this.kmzCompression);
+        if (buildId == null) {
+            writeKmz(outputStream, kmlParams, kmzCompression);
+            return null;
+        }
+        boolean[] written = new boolean[1];
+        KmzBuildVO kmzBuildVO = buildFlight.execute(buildId, () -> {
+            KmzBuildVO existing = findKmz(buildId, fileName);
+            if (existing != null) {
+                return existing;
+            }
+            written[0] = true;
+            // 同时写入输出流和本地文件
+            return saveKmz(buildId, fileName, fileOutputStream -> writeKmz(new TeeOutputStream(outputStream, fileOutputStream), kmlParams, kmzCompression));
+        });
+        if (!written[0]) {
+            Files.copy(Path.of(kmzBuildVO.getFilePath()), outputStream);
+            outputStream.flush();
+        }
+        return kmzBuildVO;
     }
 
     /**
@@ -111,37 +644,356 @@ public class RouteFileUtils {
      * @param fileName 文件名
      * @param kmlInfo  kml 文件信息（基础配置）
      * @param wpmlInfo wpml 文件信息（详细航线）
-     * @return 本地文件路径，指向生成的KMZ文件
+     * @return 生成的KMZ文件
      */
-    public String buildKmz(String fileName, KmlInfo kmlInfo, KmlInfo wpmlInfo) {
-        XStream xStream = new XStream(new DomDriver());
-        xStream.processAnnotations(KmlInfo.class);
-        xStream.addImplicitCollection(KmlActionGroup.class, "action");
-        xStream.addImplicitCollection(KmlPlacemark.class, "actionGroup");
+    public KmzBuildVO buildKmz(String fileName, KmlInfo kmlInfo, KmlInfo wpmlInfo) {
+        return buildKmz(fileName, kmlInfo, wpmlInfo, null);
+    }
 
-        String kml = XML_HEADER + xStream.toXML(kmlInfo);
-        String wpml = XML_HEADER + xStream.toXML(wpmlInfo);
-        File file = new File(LOCAL_KMZ_FILE_PATH);
-        if (!file.exists()) {
-            File mkdir = FileUtil.mkdir(file);
-            if (!mkdir.exists()) {
-                throw new RuntimeException("创建目录失败");
+    /**
+     * 生成航线 KMZ 文件，保留原 kmz 中的资源文件
+     *
+     * @param fileName 文件名
+     * @param kmlInfo  kml 文件信息（基础配置）
+     * @param wpmlInfo wpml 文件信息（详细航线）
+     * @param source   原 kmz 文件，template.kml、waylines.wpml 以外的条目原样复制；为 null 时只写入 kml、wpml
+     * @return 生成的KMZ文件
+     */
+    public KmzBuildVO buildKmz(String fileName, KmlInfo kmlInfo, KmlInfo wpmlInfo, KmzArchive source) {
+        try {
+            return saveKmz(fileName, fileOutputStream -> writeKmz(fileOutputStream, kmlInfo, wpmlInfo, kmzCompression, compactXml, null, source));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 请求中的 kmz 文件名：去掉扩展名和文件名中不允许的字符，为空时使用默认文件名
+     *
+     * @param fileName 请求中的文件名，可为 null
+     * @return 不含扩展名的文件名
+     */
+    public static String toKmzFileName(String fileName) {
+        String name = FileNameUtil.cleanInvalid(StringUtils.removeEndIgnoreCase(StringUtils.trimToEmpty(fileName), ".kmz")).trim();
+        return StringUtils.isBlank(name) || name.startsWith(".") ? DEFAULT_KMZ_FILE_NAME : name;
+    }
+
+    /**
+     * 按内容编号生成kmz文件，相同编号的文件已存在时直接返回，不重新生成；
+     * 已存在的文件名不同时在同一目录下链接为新文件名；相同编号正在生成时等待其结果
+     *
+     * @param buildId   内容编号，见 {@link #contentKey(Object)}
+     * @param fileName  文件名
+     * @param kmlParams 参数对象，包含航线的所有配置信息
+     * @return 生成的或已存在的KMZ文件
+     */
+    public KmzBuildVO buildKmz(String buildId, String fileName, KmlParams kmlParams) {
+        try {
+            return buildFlight.execute(buildId, () -> {
+                KmzBuildVO existing = findKmz(buildId, fileName);
+                if (existing != null) {
+                    return existing;
+                }
+                return saveKmz(buildId, fileName, fileOutputStream -> writeKmz(fileOutputStream, kmlParams, kmzCompression));
+            });
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 计算航线的内容编号，使用配置的默认压缩策略
+     *
+     * @param request 航线请求参数
+     * @return 32 位十六进制编号
+     */
+    public String contentKey(Object request) {
+        return contentKey(request, null);
+    }
+
+    /**
+     * 计算航线的内容编号
+     *
+     * 请求参数规范化为 JSON（属性按名称排序、忽略空值）后，连同影响输出的配置（压缩策略、输出格式、数值精度）计算 SHA-256，
+     * 取前 128 位作为编号。createTime、updateTime 在生成时写入，文件名不写入 kmz，均不参与计算，
+     * 只有文件名不同的航线得到相同的编号。
+     *
+     * @param request     航线请求参数
+     * @param compression 压缩策略，为 null 时使用配置的默认策略
+     * @return 32 位十六进制编号
+     */
+    public String contentKey(Object request, KmzCompression compression) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        // 直接写入摘要，不生成完整的 JSON 字符串
+        try (OutputStream outputStream = new DigestOutputStream(NullOutputStream.INSTANCE, digest)) {
+            outputStream.write(outputSettings(ObjectUtil.defaultIfNull(compression, kmzCompression)).getBytes(StandardCharsets.UTF_8));
+            CANONICAL_MAPPER.writeValue(outputStream, request);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return HexUtil.encodeHexStr(digest.digest()).substring(0, 32);
+    }
+
+    /**
+     * 影响 kmz 文件内容的配置，变更后内容编号随之改变
+     */
+    private String outputSettings(KmzCompression compression) {
+        StringBuilder settings = new StringBuilder("v").append(CONTENT_KEY_VERSION)
+                .append(";compression=").append(compression)
+                .append(";compact=").append(compactXml);
+        for (KmlNumberFormat.Field field : KmlNumberFormat.Field.values()) {
+            settings.append(';').append(field).append('=').append(numberFormat.getPrecision(field));
+        }
+        return settings.append('\n').toString();
+    }
+
+    /**
+     * 保存 kmz 文件到本地目录，分配新的生成编号
+     *
+     * @param fileName 文件名（不含扩展名）
+     * @param content  写入 kmz 内容，写完后只需刷新不必关闭
+     * @return 生成的KMZ文件
+     * @throws IOException IO异常
+     */
+    private KmzBuildVO saveKmz(String fileName, IOConsumer<OutputStream> content) throws IOException {
+        return saveKmz(IdUtil.fastSimpleUUID(), fileName, content);
+    }
+
+    /**
+     * 保存 kmz 文件到本地目录
+     *
+     * 文件保存在 {存储路径}/{编号前 2 位}/{编号 3-4 位}/{编号}/{文件名}.kmz，按编号前缀分两级目录，
+     * 文件数量很多时单个目录下的条目也不多；不同编号互不覆盖。
+     * 先写入同目录下的临时文件，写完后原子移动到目标路径，读取方不会看到写了一半的文件；
+     * 相同内容编号由多个进程同时生成时后完成的覆盖先完成的，内容相同
+     *
+     * @param buildId  生成编号
+     * @param fileName 文件名（不含扩展名）
+     * @param content  写入 kmz 内容，写完后只需刷新不必关闭
+     * @return 生成的KMZ文件
+     * @throws IOException IO异常
+     */
+    private KmzBuildVO saveKmz(String buildId, String fileName, IOConsumer<OutputStream> content) throws IOException {
+        Path directory = Files.createDirectories(getKmzDirectory(buildId));
+        Path target = directory.resolve(toKmzFileName(fileName) + ".kmz");
+        Path temp = Files.createTempFile(directory, ".", ".kmz.tmp");
+        try {
+            try (OutputStream fileOutputStream = Files.newOutputStream(temp)) {
+                content.accept(fileOutputStream);
             }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            try {
+                Files.deleteIfExists(directory);
+            } catch (DirectoryNotEmptyException ignored) {
+                // 相同编号的其他请求已生成文件
+            }
+            throw e;
+        }
+        return toKmzBuildVO(buildId, target);
+    }
+
+    /**
+     * 已生成的文件以新文件名硬链接到同一目录，文件系统不支持硬链接时复制
+     *
+     * @param buildId  生成编号
+     * @param existing 已生成的文件
+     * @param target   新文件名对应的路径
+     * @return 新文件名对应的KMZ文件
+     * @throws IOException IO异常
+     */
+    /**
+     * 查找已生成的文件：文件名相同时直接返回，只有文件名不同时链接为新文件名
+     *
+     * @return 不存在时返回 null
+     */
+    private KmzBuildVO findKmz(String buildId, String fileName) throws IOException {
+        Path target = getKmzDirectory(buildId).resolve(toKmzFileName(fileName) + ".kmz");
+        if (Files.exists(target)) {
+            return toKmzBuildVO(buildId, target);
+        }
+        File existing = findKmz(buildId);
+        return existing == null ? null : linkKmz(buildId, existing.toPath(), target);
+    }
+
+    private static KmzBuildVO linkKmz(String buildId, Path existing, Path target) throws IOException {
+        try {
+            Files.createLink(target, existing);
+        } catch (FileAlreadyExistsException ignored) {
+            // 其他进程已链接
+        } catch (UnsupportedOperationException | IOException e) {
+            Path temp = Files.createTempFile(target.getParent(), ".", ".kmz.tmp");
+            try {
+                Files.copy(existing, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        return toKmzBuildVO(buildId, target);
+    }
+
+    private static KmzBuildVO toKmzBuildVO(String buildId, Path file) throws IOException {
+        KmzBuildVO kmzBuildVO = new KmzBuildVO();
+        kmzBuildVO.setBuildId(buildId);
+        kmzBuildVO.setFileName(file.getFileName().toString());
+        kmzBuildVO.setFilePath(file.toString());
+        kmzBuildVO.setSize(Files.size(file));
+        return kmzBuildVO;
+    }
+
+    /**
+     * 生成编号对应的目录
+     */
+    private Path getKmzDirectory(String buildId) {
+        return Path.of(LOCAL_KMZ_FILE_PATH, buildId.substring(0, 2), buildId.substring(2, 4), buildId);
+    }
+
+    /**
+     * 按生成编号查找已生成的 kmz 文件
+     *
+     * @param buildId 生成编号
+     * @return kmz 文件，编号格式错误或文件不存在（包括尚未写完）时返回 null；
+     * 同一编号以多个文件名生成时内容相同，返回其中任意一个
+     */
+    public File findKmz(String buildId) {
+        if (buildId == null || !BUILD_ID_PATTERN.matcher(buildId).matches()) {
+            return null;
         }
-        try (FileOutputStream fileOutputStream = new FileOutputStream(LOCAL_KMZ_FILE_PATH + fileName + ".kmz");
-             ZipOutputStream zipOutputStream = new ZipOutputStream(fileOutputStream)) {
-            zipOutputStream.setLevel(0); // 0 表示不压缩，存储方式
+        File[] files = getKmzDirectory(buildId).toFile().listFiles((dir, name) -> !name.startsWith(".") && name.endsWith(".kmz"));
+        return files == null || files.length == 0 ? null : files[0];
+    }
+
+    /**
+     * 按配置的输出格式、数值精度构建航线并打包为 KMZ 写入输出流，航点数量达到阈值时并行构建 kml、wpml
+     *
+     * @param outputStream 输出流，写完后只刷新不关闭
+     * @param kmlParams    参数对象，包含航线的所有配置信息
+     * @param compression  压缩策略
+     * @throws IOException IO异常
+     */
+    private void writeKmz(OutputStream outputStream, KmlParams kmlParams, KmzCompression compression) throws IOException {
+        kmlParams.setNumberFormat(numberFormat);
+        writeKmz(outputStream, buildKml(kmlParams), buildWpml(kmlParams), compression, compactXml,
+                isParallelBuild(kmlParams) ? scratchFileManager : null, null);
+    }
+
+    /**
+     * 航点数量达到阈值时并行构建 kml、wpml（需要临时文件存放 wpml 压缩数据）
+     */
+    private boolean isParallelBuild(KmlParams kmlParams) {
+        RouteColumns routeColumns = kmlParams.getRouteColumns();
+        return parallelThreshold >= 0 && scratchFileManager != null && routeColumns != null && routeColumns.size() >= parallelThreshold;
+    }
+
+    /**
+     * 按默认配置（不压缩、缩进输出、按顺序构建）将 kml、wpml 打包为 KMZ 写入输出流
+     *
+     * @param outputStream 输出流，写完后只刷新不关闭
+     * @param kmlInfo      kml 文件信息（基础配置）
+     * @param wpmlInfo     wpml 文件信息（详细航线）
+     * @throws IOException IO异常
+     */
+    public static void writeKmz(OutputStream outputStream, KmlInfo kmlInfo, KmlInfo wpmlInfo) throws IOException {
+        writeKmz(outputStream, kmlInfo, wpmlInfo, KmzCompression.STORE, false, null, null);
+    }
+
+    /**
+     * 将 kml、wpml 打包为 KMZ 写入输出流，并原样复制原 kmz 中的其他条目
+     *
+     * 指定临时文件（{@link ScratchFileManager}）时并行构建：waylines.wpml 在构建线程池中构建、序列化并压缩到临时文件，
+     * 同时当前线程将 template.kml 直接写入 zip，之后再把 waylines.wpml 的压缩数据从临时文件原样追加，条目顺序不变；
+     * 堆内存占用与航点数量无关。
+     * 其他条目（wpmz/res/ 下的参考图片等）以原始压缩数据写入（{@link ZipArchiveOutputStream#addRawArchiveEntry}），
+     * 不解压也不重新压缩，更新带大量资源文件的 kmz 时只有 kml、wpml 两个条目需要重新生成
+     *
+     * @param outputStream       输出流，写完后只刷新不关闭
+     * @param kmlInfo            kml 文件信息（基础配置）
+     * @param wpmlInfo           wpml 文件信息（详细航线）
+     * @param compression        压缩策略
+     * @param compact            是否紧凑输出（不缩进、不换行）
+     * @param scratchFileManager 并行构建时存放 waylines.wpml 压缩数据的临时文件，为 null 时按顺序构建
+     * @param source             原 kmz 文件，为 null 时只写入 kml、wpml
+     * @throws IOException IO异常
+     */
+    public static void writeKmz(OutputStream outputStream, KmlInfo kmlInfo, KmlInfo wpmlInfo, KmzCompression compression, boolean compact,
+                                ScratchFileManager scratchFileManager, KmzArchive source) throws IOException {
+        ScratchFile wpmlData = scratchFileManager != null ? scratchFileManager.create(".wpml") : null;
+        Future<KmzEntry> wpmlEntry = wpmlData != null
+                ? BUILD_EXECUTOR.submit(() -> {
+                    try (OutputStream dataOutputStream = new BufferedOutputStream(wpmlData.openOutputStream(), 64 * 1024)) {
+                        return KmzEntry.of(WPML_ENTRY_NAME, wpmlInfo, compression, compact, dataOutputStream);
+                    }
+                })
+                : null;
+        try {
+            BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, 16 * 1024);
+            ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(bufferedOutputStream);
 
             // 创建 wpmz 目录中的 template.kml 文件条目
-            buildZipFile("wpmz/template.kml", zipOutputStream, kml);
+            buildZipFile(KML_ENTRY_NAME, zipOutputStream, kmlInfo, compression, compact);
 
             // 创建 wpmz 目录中的 waylines.wpml 文件条目
-            buildZipFile("wpmz/waylines.wpml", zipOutputStream, wpml);
+            if (wpmlEntry != null) {
+                KmzEntry entry = getBuildResult(wpmlEntry);
+                try (InputStream dataInputStream = new FileInputStream(wpmlData.getFile())) {
+                    entry.writeTo(zipOutputStream, dataInputStream);
+                }
+            } else {
+                buildZipFile(WPML_ENTRY_NAME, zipOutputStream, wpmlInfo, compression, compact);
+            }
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            // 原样复制资源文件等其他条目
+            if (source != null) {
+                source.copyOtherEntries(zipOutputStream);
+            }
+
+            // 写出 zip 目录但不关闭底层输出流
+            zipOutputStream.finish();
+            bufferedOutputStream.flush();
+        } finally {
+            if (wpmlEntry != null) {
+                wpmlEntry.cancel(true);
+            }
+            if (wpmlData != null) {
+                // 构建线程仍在写入时，之后预留空间会失败并结束
+                wpmlData.close();
+            }
         }
-        return LOCAL_KMZ_FILE_PATH + fileName + ".kmz";
+    }
+
+    private static <T> T getBuildResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("kmz 构建或解析被中断");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * 构建ZIP文件条目，文档内容直接以 UTF-8 流式写入条目，不生成中间字符串
+     *
+     * @param name 条目名称（在ZIP中的路径）
+     * @param zipOutputStream ZIP输出流
+     * @param kmlInfo 文件内容
+     * @param compression 压缩策略
+     * @param compact 是否紧凑输出
+     * @throws IOException IO异常
+     */
+    private static void buildZipFile(String name, ZipArchiveOutputStream zipOutputStream, KmlInfo kmlInfo, KmzCompression compression, boolean compact) throws IOException {
+        buildZipFile(name, zipOutputStream, compression, entry -> KmlStreamWriter.write(kmlInfo, entry, compact));
     }
 
     /**
@@ -149,23 +1001,74 @@ public class RouteFileUtils {
      *
      * @param name 条目名称（在ZIP中的路径）
      * @param zipOutputStream ZIP输出流
-     * @param content 文件内容
+     * @param compression 压缩策略
+     * @param content 写入条目内容，写完后不关闭输出流
      * @throws IOException IO异常
      */
-    private static void buildZipFile(String name, ZipOutputStream zipOutputStream, String content) throws IOException {
-        ZipEntry kmlEntry = new ZipEntry(name);
-        zipOutputStream.putNextEntry(kmlEntry);
-        // 将内容写入 ZIP 条目
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))) {
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = inputStream.read(buffer)) >= 0) {
-                zipOutputStream.write(buffer, 0, length);
-            }
+    private static void buildZipFile(String name, ZipArchiveOutputStream zipOutputStream, KmzCompression compression, IOConsumer<OutputStream> content) throws IOException {
+        try (OutputStream entry = compression.open(level -> {
+            // 压缩级别在开始条目时生效，0 表示不压缩，存储方式
+            zipOutputStream.setLevel(level);
+            zipOutputStream.putArchiveEntry(new ZipArchiveEntry(name));
+            return new ProxyOutputStream(zipOutputStream) {
+                @Override
+                public void close() throws IOException {
+                    zipOutputStream.closeArchiveEntry(); // 关闭条目
+                }
+            };
+        })) {
+            // 将内容写入 ZIP 条目
+            content.accept(entry);
         }
-        zipOutputStream.closeEntry(); // 关闭条目
     }
 
+    /**
+     * 按局部修改生成 KMZ 文件
+     *
+     * template.kml、waylines.wpml 按原始字节复制并只替换修改的元素（见 {@link KmlStreamPatcher}），
+     * 其他条目以原始压缩数据复制
+     *
+     * @param fileName  文件名
+     * @param source    原 kmz 文件
+     * @param kmlPatch  template.kml 的修改
+     * @param wpmlPatch waylines.wpml 的修改
+     * @return 生成的KMZ文件
+     */
+    public KmzBuildVO patchKmz(String fileName, KmzArchive source, KmlPatch kmlPatch, KmlPatch wpmlPatch) {
+        try {
+            return saveKmz(fileName, fileOutputStream -> writePatchedKmz(fileOutputStream, source, kmlPatch, wpmlPatch, kmzCompression));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 按局部修改将 KMZ 写入输出流
+     *
+     * @param outputStream 输出流，写完后只刷新不关闭
+     * @param source       原 kmz 文件
+     * @param kmlPatch     template.kml 的修改
+     * @param wpmlPatch    waylines.wpml 的修改
+     * @param compression  压缩策略，用于 template.kml、waylines.wpml
+     * @throws IOException IO异常
+     */
+    public static void writePatchedKmz(OutputStream outputStream, KmzArchive source, KmlPatch kmlPatch, KmlPatch wpmlPatch, KmzCompression compression) throws IOException {
+        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, 16 * 1024);
+        ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(bufferedOutputStream);
+        if (source.hasKml()) {
+            try (InputStream inputStream = source.openKml()) {
+                buildZipFile(KML_ENTRY_NAME, zipOutputStream, compression, entry -> KmlStreamPatcher.patch(inputStream, entry, kmlPatch));
+            }
+        }
+        if (source.hasWpml()) {
+            try (InputStream inputStream = source.openWpml()) {
+                buildZipFile(WPML_ENTRY_NAME, zipOutputStream, compression, entry -> KmlStreamPatcher.patch(inputStream, entry, wpmlPatch));
+            }
+        }
+        source.copyOtherEntries(zipOutputStream);
+        zipOutputStream.finish();
+        bufferedOutputStream.flush();
+    }
 
     /**
      * 构建KML文档对象
@@ -329,7 +1232,7 @@ public class RouteFileUtils {
         kmlFolder.setTemplateId("0");
 
         // 设置自动飞行速度，从参数中获取
-        kmlFolder.setAutoFlightSpeed(String.valueOf(kmlParams.getAutoFlightSpeed()));
+        kmlFolder.setAutoFlightSpeed(kmlParams.getNumberFormat().format(kmlParams.getAutoFlightSpeed(), KmlNumberFormat.Field.SPEED));
 
         // 根据文件类型设置不同的参数
         if (StringUtils.equals(fileType, FileTypeConstants.KML)) {
@@ -341,7 +1244,7 @@ public class RouteFileUtils {
             kmlFolder.setWaylineCoordinateSysParam(buildKmlWayLineCoordinateSysParam(
                     kmlParams.getTemplateType(),
                     HeightModeEnums.RELATIVE_TO_START_POINT.getValue(),
-                    String.valueOf(kmlParams.getGlobalHeight())));
+                    kmlParams.getNumberFormat().format(kmlParams.getGlobalHeight(), KmlNumberFormat.Field.HEIGHT)));
 
             // 构建并设置负载参数
             kmlFolder.setPayloadParam(buildKmlPayloadParam(kmlParams));
@@ -382,32 +1285,20 @@ public class RouteFileUtils {
             kmlFolder.setGimbalPitchMode(kmlParams.getGimbalPitchMode());
 
             // 设置全局高度
-            kmlFolder.setGlobalHeight(String.valueOf(kmlParams.getGlobalHeight()));
+            kmlFolder.setGlobalHeight(kmlParams.getNumberFormat().format(kmlParams.getGlobalHeight(), KmlNumberFormat.Field.HEIGHT));
 
             // 设置全局航点偏航角参数
             WaypointHeadingReq waypointHeadingReq = kmlParams.getWaypointHeadingReq();
             kmlFolder.setGlobalWaypointHeadingParam(buildKmlGlobalWaypointHeadingParam(
                     waypointHeadingReq.getWaypointHeadingMode(),
                     waypointHeadingReq.getWaypointHeadingAngle(),
-                    waypointHeadingReq.getWaypointPoiPoint()));
-
-            // 构建航点
-            List<RoutePointInfo> routePointList = kmlParams.getRoutePointList();
-            if (CollectionUtil.isNotEmpty(routePointList)) {
-                // 标记第一个和最后一个航点为起始/结束点
-                routePointList.stream()
-                        .min(Comparator.comparing(RoutePointInfo::getRoutePointIndex))
-                        .ifPresent(routePointInfo -> routePointInfo.setIsStartAndEndPoint(Boolean.TRUE));
-                routePointList.stream()
-                        .max(Comparator.comparing(RoutePointInfo::getRoutePointIndex))
-                        .ifPresent(routePointInfo -> routePointInfo.setIsStartAndEndPoint(Boolean.TRUE));
-
-                // 构建航点标记列表
-                List<KmlPlacemark> kmlPlacemarkList = new ArrayList<>();
-                for (RoutePointInfo routePointInfo : routePointList) {
-                    kmlPlacemarkList.add(buildKmlPlacemark(routePointInfo, kmlParams, fileType));
-                }
-                kmlFolder.setPlacemarkList(kmlPlacemarkList);
+                    waypointHeadingReq.getWaypointPoiPoint(),
+                    kmlParams.getNumberFormat()));
+
+            // 构建航点，编号最小和最大的航点标记为起始/结束点
+            RouteColumns routeColumns = kmlParams.getRouteColumns();
+            if (routeColumns != null && routeColumns.size() > 0) {
+                kmlFolder.setPlacemarkList(new RoutePlacemarkList(routeColumns, kmlParams, fileType, true));
             }
         } else {
             // 非航点飞行模板类型处理（如建图航拍、倾斜摄影等）
@@ -419,15 +1310,11 @@ public class RouteFileUtils {
                 kmlFolder.setPlacemarkList(kmlPlacemarkList);
             } else {
                 // WPML文件类型处理
-                // 构建航点
-                List<RoutePointInfo> routePointList = kmlParams.getRoutePointList();
-                if (CollectionUtil.isNotEmpty(routePointList)) {
-                    // 构建航点标记列表
-                    List<KmlPlacemark> kmlPlacemarkList = new ArrayList<>();
-                    for (RoutePointInfo routePointInfo : routePointList) {
-                        kmlPlacemarkList.add(buildKmlPlacemark(routePointInfo, kmlParams, fileType));
-                    }
-                    kmlFolder.setPlacemarkList(kmlPlacemarkList);
+                // 构建航点，航点航线与 kml 相同，编号最小和最大的航点标记为起始/结束点
+                RouteColumns routeColumns = kmlParams.getRouteColumns();
+                if (routeColumns != null && routeColumns.size() > 0) {
+                    boolean markStartAndEnd = StringUtils.equals(kmlParams.getTemplateType(), TemplateTypeEnums.WAYPOINT.getValue());
+                    kmlFolder.setPlacemarkList(new RoutePlacemarkList(routeColumns, kmlParams, fileType, markStartAndEnd));
                 }
             }
         }
@@ -520,13 +1407,14 @@ public class RouteFileUtils {
      * @param waypointHeadingMode 偏航角模式
      * @param waypointHeadingAngle 偏航角角度
      * @param waypointPoiPoint 兴趣点坐标
+     * @param numberFormat 数值格式
      * @return KmlGlobalWaypointHeadingParam 全局航点偏航角参数对象
      */
-    public static KmlGlobalWaypointHeadingParam buildKmlGlobalWaypointHeadingParam(String waypointHeadingMode, Double waypointHeadingAngle, String waypointPoiPoint) {
+    public static KmlGlobalWaypointHeadingParam buildKmlGlobalWaypointHeadingParam(String waypointHeadingMode, Double waypointHeadingAngle, String waypointPoiPoint, KmlNumberFormat numberFormat) {
         KmlGlobalWaypointHeadingParam kmlGlobalWaypointHeadingParam = new KmlGlobalWaypointHeadingParam();
         kmlGlobalWaypointHeadingParam.setWaypointHeadingMode(waypointHeadingMode);
         if (StringUtils.equals(waypointHeadingMode, WaypointHeadingModeEnums.SMOOTH_TRANSITION.getValue())) {
-            kmlGlobalWaypointHeadingParam.setWaypointHeadingAngle(String.valueOf(waypointHeadingAngle));
+            kmlGlobalWaypointHeadingParam.setWaypointHeadingAngle(numberFormat.format(waypointHeadingAngle, KmlNumberFormat.Field.ANGLE));
         }
         if (StringUtils.equals(waypointHeadingMode, WaypointHeadingModeEnums.TOWARD_POI.getValue())) {
             kmlGlobalWaypointHeadingParam.setWaypointPoiPoint(waypointPoiPoint);
@@ -545,23 +1433,39 @@ public class RouteFileUtils {
      * @return KmlPlacemark 航点标记对象
      */
     public static KmlPlacemark buildKmlPlacemark(RoutePointInfo routePointInfo, KmlParams kmlParams, String fileType) {
+        return buildKmlPlacemark(RouteColumns.ofRoutePoints(List.of(routePointInfo)), 0, kmlParams, fileType, false);
+    }
+
+    /**
+     * 由列式航点构建航点标记对象
+     *
+     * @param routeColumns 列式航点
+     * @param i 航点位置
+     * @param kmlParams 航线参数对象
+     * @param fileType 文件类型
+     * @param markStartAndEnd 是否按编号标记首尾航点
+     * @return KmlPlacemark 航点标记对象
+     */
+    public static KmlPlacemark buildKmlPlacemark(RouteColumns routeColumns, int i, KmlParams kmlParams, String fileType, boolean markStartAndEnd) {
         KmlPlacemark kmlPlacemark = new KmlPlacemark();
         kmlPlacemark.setIsRisky("0");
-        kmlPlacemark.setKmlPoint(buildKmlPoint(String.valueOf(routePointInfo.getLongitude()), String.valueOf(routePointInfo.getLatitude())));
-        kmlPlacemark.setIndex(String.valueOf(routePointInfo.getRoutePointIndex()));
-
-        handleHeight(routePointInfo, kmlParams, fileType, kmlPlacemark);
-        handleSpeed(routePointInfo, kmlParams, fileType, kmlPlacemark);
-        handleWaypointHeadingParam(routePointInfo, kmlParams, fileType, kmlPlacemark);
-        handleWaypointTurnParam(routePointInfo, kmlParams, fileType, kmlPlacemark);
+        kmlPlacemark.setKmlPoint(buildKmlPoint(routeColumns.longitude(i), routeColumns.latitude(i), kmlParams.getNumberFormat()));
+        kmlPlacemark.setIndex(String.valueOf(routeColumns.getRoutePointIndex(i)));
+
+        boolean startAndEndPoint = routeColumns.isStartAndEndPoint(i, markStartAndEnd);
+        handleHeight(routeColumns, i, kmlParams, fileType, kmlPlacemark);
+        handleSpeed(routeColumns, i, kmlParams, fileType, kmlPlacemark);
+        handleWaypointHeadingParam(routeColumns.getWaypointHeadingReq(i), kmlParams, fileType, kmlPlacemark);
+        handleWaypointTurnParam(routeColumns.getWaypointTurnReq(i), startAndEndPoint, kmlParams, fileType, kmlPlacemark);
         if (StringUtils.equals(fileType, FileTypeConstants.KML)) {
-            if (ObjectUtil.isNotEmpty(routePointInfo.getGimbalPitchAngle()) && StringUtils.equals(kmlParams.getGimbalPitchMode(), GimbalPitchModeEnums.USE_POINT_SETTING.getValue())) {
-                kmlPlacemark.setGimbalPitchAngle(String.valueOf(routePointInfo.getGimbalPitchAngle()));
+            if (routeColumns.hasGimbalPitchAngle(i) && StringUtils.equals(kmlParams.getGimbalPitchMode(), GimbalPitchModeEnums.USE_POINT_SETTING.getValue())) {
+                kmlPlacemark.setGimbalPitchAngle(kmlParams.getNumberFormat().format(routeColumns.gimbalPitchAngle(i), KmlNumberFormat.Field.ANGLE));
             }
         }
-        if (CollectionUtil.isNotEmpty(routePointInfo.getActionGroupList())) {
+        List<ActionGroupReq> actionGroupList = routeColumns.getActionGroupList(i);
+        if (CollectionUtil.isNotEmpty(actionGroupList)) {
             List<KmlActionGroup> kmlActionGroupList = new ArrayList<>();
-            for (ActionGroupReq actionGroupReq : routePointInfo.getActionGroupList()) {
+            for (ActionGroupReq actionGroupReq : actionGroupList) {
                 kmlActionGroupList.add(buildKmlActionGroup(actionGroupReq, kmlParams));
             }
             kmlPlacemark.setActionGroup(kmlActionGroupList);
@@ -585,10 +1489,10 @@ public class RouteFileUtils {
         kmlPlacemark.setDirection(mappingTypeReq.getDirection());
         kmlPlacemark.setMargin(mappingTypeReq.getMargin());
         kmlPlacemark.setOverlap(buildKmlOverlap(mappingTypeReq.getCollectionMethod(), mappingTypeReq.getLensType(), mappingTypeReq.getOverlapH(), mappingTypeReq.getOverlapW()));
-        kmlPlacemark.setEllipsoidHeight(String.valueOf(kmlParams.getGlobalHeight()));
-        kmlPlacemark.setHeight(String.valueOf(kmlParams.getGlobalHeight()));
+        kmlPlacemark.setEllipsoidHeight(kmlParams.getNumberFormat().format(kmlParams.getGlobalHeight(), KmlNumberFormat.Field.HEIGHT));
+        kmlPlacemark.setHeight(kmlParams.getNumberFormat().format(kmlParams.getGlobalHeight(), KmlNumberFormat.Field.HEIGHT));
         kmlPlacemark.setFacadeWaylineEnable("0");
-        kmlPlacemark.setPolygon(buildKmlPolygon(mappingTypeReq.getCoordinates()));
+        kmlPlacemark.setPolygon(buildKmlPolygon(mappingTypeReq.getCoordinates(), kmlParams.getNumberFormat()));
         return kmlPlacemark;
     }
 
@@ -638,15 +1542,25 @@ public class RouteFileUtils {
      * 构建多边形对象
      *
      * @param coordinatePointReqList 坐标点列表
+     * @param numberFormat 数值格式
      * @return KmlPolygon 多边形对象
      */
-    private static KmlPolygon buildKmlPolygon(List<CoordinatePointReq> coordinatePointReqList) {
+    private static KmlPolygon buildKmlPolygon(List<CoordinatePointReq> coordinatePointReqList, KmlNumberFormat numberFormat) {
         KmlPolygon kmlPolygon = new KmlPolygon();
         KmlLinearRing kmlLinearRing = new KmlLinearRing();
 
-        String coordinates = coordinatePointReqList.stream().map(point -> point.getLongitude() + "," + point.getLatitude() + "," + point.getHeight())
-                .collect(Collectors.joining(", "));
-        kmlLinearRing.setCoordinates(StringUtils.join(coordinates, " "));
+        StringBuilder coordinates = KmlNumberFormat.buffer();
+        for (CoordinatePointReq point : coordinatePointReqList) {
+            if (!coordinates.isEmpty()) {
+                coordinates.append(", ");
+            }
+            numberFormat.append(coordinates, point.getLongitude(), KmlNumberFormat.Field.COORDINATE);
+            coordinates.append(',');
+            numberFormat.append(coordinates, point.getLatitude(), KmlNumberFormat.Field.COORDINATE);
+            coordinates.append(',');
+            numberFormat.append(coordinates, point.getHeight(), KmlNumberFormat.Field.HEIGHT);
+        }
+        kmlLinearRing.setCoordinates(coordinates.toString());
         KmlOuterBoundaryIs kmlOuterBoundaryIs = new KmlOuterBoundaryIs();
         kmlOuterBoundaryIs.setLinearRing(kmlLinearRing);
         kmlPolygon.setOuterBoundaryIs(kmlOuterBoundaryIs);
@@ -656,20 +1570,20 @@ public class RouteFileUtils {
     /**
      * 处理航点转弯参数
      *
-     * @param routePointInfo 航点信息
+     * @param waypointTurnReq 航点转弯参数
+     * @param startAndEndPoint 是否为首尾航点
      * @param kmlParams 航线参数对象
      * @param fileType 文件类型
      * @param kmlPlacemark 航点标记对象
      */
-    private static void handleWaypointTurnParam(RoutePointInfo routePointInfo, KmlParams kmlParams, String fileType, KmlPlacemark kmlPlacemark) {
-        WaypointTurnReq waypointTurnReq = routePointInfo.getWaypointTurnReq();
+    private static void handleWaypointTurnParam(WaypointTurnReq waypointTurnReq, boolean startAndEndPoint, KmlParams kmlParams, String fileType, KmlPlacemark kmlPlacemark) {
         // 使用全局航点转弯模式
         if (ObjectUtil.isNotEmpty(waypointTurnReq)) {
             if (StringUtils.equals(fileType, FileTypeConstants.KML)) {
                 kmlPlacemark.setUseGlobalTurnParam("0");
             }
             kmlPlacemark.setWaypointTurnParam(buildKmlWaypointTurnParam(waypointTurnReq.getWaypointTurnMode(),
-                    waypointTurnReq.getWaypointTurnDampingDist(), waypointTurnReq.getUseStraightLine(), routePointInfo.getIsStartAndEndPoint()));
+                    waypointTurnReq.getWaypointTurnDampingDist(), waypointTurnReq.getUseStraightLine(), startAndEndPoint, kmlParams.getNumberFormat()));
             if (ObjectUtil.isNotEmpty(waypointTurnReq.getUseStraightLine())) {
                 kmlPlacemark.setUseStraightLine(String.valueOf(waypointTurnReq.getUseStraightLine()));
             }
@@ -680,7 +1594,7 @@ public class RouteFileUtils {
             } else if (StringUtils.equals(fileType, FileTypeConstants.WPML)) {
                 WaypointTurnReq globalWaypoint = kmlParams.getWaypointTurnReq();
                 kmlPlacemark.setWaypointTurnParam(buildKmlWaypointTurnParam(globalWaypoint.getWaypointTurnMode(),
-                        globalWaypoint.getWaypointTurnDampingDist(), globalWaypoint.getUseStraightLine(), routePointInfo.getIsStartAndEndPoint()));
+                        globalWaypoint.getWaypointTurnDampingDist(), globalWaypoint.getUseStraightLine(), startAndEndPoint, kmlParams.getNumberFormat()));
             }
         }
     }
@@ -688,24 +1602,23 @@ public class RouteFileUtils {
     /**
      * 处理航点偏航角参数
      *
-     * @param routePointInfo 航点信息
+     * @param waypointHeadingReq 航点偏航角参数
      * @param kmlParams 航线参数对象
      * @param fileType 文件类型
      * @param kmlPlacemark 航点标记对象
      */
-    private static void handleWaypointHeadingParam(RoutePointInfo routePointInfo, KmlParams kmlParams, String fileType, KmlPlacemark kmlPlacemark) {
-        WaypointHeadingReq waypointHeadingReq = routePointInfo.getWaypointHeadingReq();
+    private static void handleWaypointHeadingParam(WaypointHeadingReq waypointHeadingReq, KmlParams kmlParams, String fileType, KmlPlacemark kmlPlacemark) {
         if (ObjectUtil.isNotEmpty(waypointHeadingReq)) {
             if (StringUtils.equals(fileType, FileTypeConstants.KML)) {
                 kmlPlacemark.setUseGlobalHeadingParam("0");
             }
-            kmlPlacemark.setWaypointHeadingParam(buildKmlWaypointHeadingParam(waypointHeadingReq.getWaypointHeadingMode(), waypointHeadingReq.getWaypointHeadingAngle(), waypointHeadingReq.getWaypointPoiPoint()));
+            kmlPlacemark.setWaypointHeadingParam(buildKmlWaypointHeadingParam(waypointHeadingReq.getWaypointHeadingMode(), waypointHeadingReq.getWaypointHeadingAngle(), waypointHeadingReq.getWaypointPoiPoint(), kmlParams.getNumberFormat()));
         } else {
             if (StringUtils.equals(fileType, FileTypeConstants.KML)) {
                 kmlPlacemark.setUseGlobalHeadingParam("1");
             } else if (StringUtils.equals(fileType, FileTypeConstants.WPML)) {
                 WaypointHeadingReq globalWaypointHeading = kmlParams.getWaypointHeadingReq();
-                kmlPlacemark.setWaypointHeadingParam(buildKmlWaypointHeadingParam(globalWaypointHeading.getWaypointHeadingMode(), globalWaypointHeading.getWaypointHeadingAngle(), globalWaypointHeading.getWaypointPoiPoint()));
+                kmlPlacemark.setWaypointHeadingParam(buildKmlWaypointHeadingParam(globalWaypointHeading.getWaypointHeadingMode(), globalWaypointHeading.getWaypointHeadingAngle(), globalWaypointHeading.getWaypointPoiPoint(), kmlParams.getNumberFormat()));
             }
         }
 
@@ -715,22 +1628,23 @@ public class RouteFileUtils {
     /**
      * 处理航点速度参数
      *
-     * @param routePointInfo 航点信息
+     * @param routeColumns 列式航点
+     * @param i 航点位置
      * @param kmlParams 航线参数对象
      * @param fileType 文件类型
      * @param kmlPlacemark 航点标记对象
      */
-    private static void handleSpeed(RoutePointInfo routePointInfo, KmlParams kmlParams, String fileType, KmlPlacemark kmlPlacemark) {
-        if (ObjectUtil.isNotEmpty(routePointInfo.getSpeed())) {
+    private static void handleSpeed(RouteColumns routeColumns, int i, KmlParams kmlParams, String fileType, KmlPlacemark kmlPlacemark) {
+        if (routeColumns.hasSpeed(i)) {
             if (StringUtils.equals(fileType, FileTypeConstants.KML)) {
                 kmlPlacemark.setUseGlobalSpeed("0");
             }
-            kmlPlacemark.setWaypointSpeed(String.valueOf(routePointInfo.getSpeed()));
+            kmlPlacemark.setWaypointSpeed(kmlParams.getNumberFormat().format(routeColumns.speed(i), KmlNumberFormat.Field.SPEED));
         } else {
             if (StringUtils.equals(fileType, FileTypeConstants.KML)) {
                 kmlPlacemark.setUseGlobalSpeed("1");
             } else if (StringUtils.equals(fileType, FileTypeConstants.WPML)) {
-                kmlPlacemark.setWaypointSpeed(String.valueOf(kmlParams.getAutoFlightSpeed()));
+                kmlPlacemark.setWaypointSpeed(kmlParams.getNumberFormat().format(kmlParams.getAutoFlightSpeed(), KmlNumberFormat.Field.SPEED));
             }
         }
     }
@@ -738,25 +1652,26 @@ public class RouteFileUtils {
     /**
      * 处理航点高度参数
      *
-     * @param routePointInfo 航点信息
+     * @param routeColumns 列式航点
+     * @param i 航点位置
      * @param kmlParams 航线参数对象
      * @param fileType 文件类型
      * @param kmlPlacemark 航点标记对象
      */
-    private static void handleHeight(RoutePointInfo routePointInfo, KmlParams kmlParams, String fileType, KmlPlacemark kmlPlacemark) {
-        if (ObjectUtil.isNotEmpty(routePointInfo.getHeight())) {
+    private static void handleHeight(RouteColumns routeColumns, int i, KmlParams kmlParams, String fileType, KmlPlacemark kmlPlacemark) {
+        if (routeColumns.hasHeight(i)) {
             if (StringUtils.equals(fileType, FileTypeConstants.KML)) {
                 kmlPlacemark.setUseGlobalHeight("0");
-                kmlPlacemark.setEllipsoidHeight(String.valueOf(routePointInfo.getHeight()));
-                kmlPlacemark.setHeight(String.valueOf(routePointInfo.getHeight()));
+                kmlPlacemark.setEllipsoidHeight(kmlParams.getNumberFormat().format(routeColumns.height(i), KmlNumberFormat.Field.HEIGHT));
+                kmlPlacemark.setHeight(kmlParams.getNumberFormat().format(routeColumns.height(i), KmlNumberFormat.Field.HEIGHT));
             } else if (StringUtils.equals(fileType, FileTypeConstants.WPML)) {
-                kmlPlacemark.setExecuteHeight(String.valueOf(routePointInfo.getHeight()));
+                kmlPlacemark.setExecuteHeight(kmlParams.getNumberFormat().format(routeColumns.height(i), KmlNumberFormat.Field.HEIGHT));
             }
         } else {
             if (StringUtils.equals(fileType, FileTypeConstants.KML)) {
                 kmlPlacemark.setUseGlobalHeight("1");
             } else if (StringUtils.equals(fileType, FileTypeConstants.WPML)) {
-                kmlPlacemark.setExecuteHeight(String.valueOf(kmlParams.getGlobalHeight()));
+                kmlPlacemark.setExecuteHeight(kmlParams.getNumberFormat().format(kmlParams.getGlobalHeight(), KmlNumberFormat.Field.HEIGHT));
             }
         }
     }
@@ -774,19 +1689,34 @@ public class RouteFileUtils {
         return kmlPoint;
     }
 
+    /**
+     * 构建航点坐标对象，经纬度按坐标精度格式化
+     *
+     * @param longitude 经度
+     * @param latitude 纬度
+     * @param numberFormat 数值格式
+     * @return KmlPoint 航点坐标对象
+     */
+    public static KmlPoint buildKmlPoint(double longitude, double latitude, KmlNumberFormat numberFormat) {
+        KmlPoint kmlPoint = new KmlPoint();
+        kmlPoint.setCoordinates(numberFormat.formatCoordinates(longitude, latitude));
+        return kmlPoint;
+    }
+
     /**
      * 构建航点偏航角参数对象
      *
      * @param waypointHeadingMode 偏航角模式
      * @param waypointHeadingAngle 偏航角角度
      * @param waypointPoiPoint 兴趣点坐标
+     * @param numberFormat 数值格式
      * @return KmlWaypointHeadingParam 航点偏航角参数对象
      */
-    public static KmlWaypointHeadingParam buildKmlWaypointHeadingParam(String waypointHeadingMode, Double waypointHeadingAngle, String waypointPoiPoint) {
+    public static KmlWaypointHeadingParam buildKmlWaypointHeadingParam(String waypointHeadingMode, Double waypointHeadingAngle, String waypointPoiPoint, KmlNumberFormat numberFormat) {
         KmlWaypointHeadingParam kmlWaypointHeadingParam = new KmlWaypointHeadingParam();
         kmlWaypointHeadingParam.setWaypointHeadingMode(waypointHeadingMode);
         if (StringUtils.equals(waypointHeadingMode, WaypointHeadingModeEnums.SMOOTH_TRANSITION.getValue())) {
-            kmlWaypointHeadingParam.setWaypointHeadingAngle(String.valueOf(waypointHeadingAngle));
+            kmlWaypointHeadingParam.setWaypointHeadingAngle(numberFormat.format(waypointHeadingAngle, KmlNumberFormat.Field.ANGLE));
         }
         if (StringUtils.equals(waypointHeadingMode, WaypointHeadingModeEnums.TOWARD_POI.getValue())) {
             kmlWaypointHeadingParam.setWaypointPoiPoint(waypointPoiPoint);
@@ -802,9 +1732,10 @@ public class RouteFileUtils {
      * @param waypointTurnDampingDist 转弯缓冲距离
      * @param useStraightLine 是否使用直线
      * @param startAndEndPoint 是否为首尾航点
+     * @param numberFormat 数值格式
      * @return KmlWaypointTurnParam 航点转弯参数对象
      */
-    public static KmlWaypointTurnParam buildKmlWaypointTurnParam(String waypointTurnMode, Double waypointTurnDampingDist, Integer useStraightLine, Boolean startAndEndPoint) {
+    public static KmlWaypointTurnParam buildKmlWaypointTurnParam(String waypointTurnMode, Double waypointTurnDampingDist, Integer useStraightLine, Boolean startAndEndPoint, KmlNumberFormat numberFormat) {
         KmlWaypointTurnParam kmlWaypointTurnParam = new KmlWaypointTurnParam();
         // 首尾航点不能是协调转弯类型
         if (startAndEndPoint && StringUtils.equals(waypointTurnMode, GlobalWaypointTurnModeEnums.COORDINATE_TURN.getValue())) {
@@ -815,7 +1746,7 @@ public class RouteFileUtils {
         if ((StringUtils.equals(waypointTurnMode, GlobalWaypointTurnModeEnums.COORDINATE_TURN.getValue()) ||
                 StringUtils.equals(waypointTurnMode, GlobalWaypointTurnModeEnums.TO_POINT_AND_PASS_WITH_CONTINUITY_CURVATURE.getValue())) &&
                 ObjectUtil.equals(useStraightLine, 1)) {
-            kmlWaypointTurnParam.setWaypointTurnDampingDist(String.valueOf(waypointTurnDampingDist));
+            kmlWaypointTurnParam.setWaypointTurnDampingDist(numberFormat.format(waypointTurnDampingDist, KmlNumberFormat.Field.DEFAULT));
         }
         return kmlWaypointTurnParam;
     }
@@ -834,7 +1765,7 @@ public class RouteFileUtils {
         kmlActionGroup.setActionGroupEndIndex(String.valueOf(actionGroupReq.getActionGroupEndIndex()));
         kmlActionGroup.setActionGroupMode(ActionGroupModeEnums.SEQUENCE.getValue());
 
-        kmlActionGroup.setActionTrigger(buildKmlActionTrigger(actionGroupReq.getActionTriggerType(), actionGroupReq.getActionTriggerParam()));
+        kmlActionGroup.setActionTrigger(buildKmlActionTrigger(actionGroupReq.getActionTriggerType(), actionGroupReq.getActionTriggerParam(), kmlParams.getNumberFormat()));
         kmlActionGroup.setAction(getKmlActionList(actionGroupReq.getActions(), kmlParams));
         return kmlActionGroup;
     }
@@ -844,14 +1775,15 @@ public class RouteFileUtils {
      *
      * @param actionTriggerType 动作触发类型
      * @param actionTriggerParam 动作触发参数
+     * @param numberFormat 数值格式
      * @return KmlActionTrigger 动作触发器对象
      */
-    public static KmlActionTrigger buildKmlActionTrigger(String actionTriggerType, Double actionTriggerParam) {
+    public static KmlActionTrigger buildKmlActionTrigger(String actionTriggerType, Double actionTriggerParam, KmlNumberFormat numberFormat) {
         KmlActionTrigger kmlActionTrigger = new KmlActionTrigger();
         kmlActionTrigger.setActionTriggerType(actionTriggerType);
         if (StringUtils.equals(actionTriggerType, ActionTriggerTypeEnums.MULTIPLE_TIMING.getValue()) ||
                 StringUtils.equals(actionTriggerType, ActionTriggerTypeEnums.MULTIPLE_DISTANCE.getValue())) {
-            kmlActionTrigger.setActionTriggerParam(String.valueOf(actionTriggerParam));
+            kmlActionTrigger.setActionTriggerParam(numberFormat.format(actionTriggerParam, KmlNumberFormat.Field.DEFAULT));
         }
         return kmlActionTrigger;
     }
@@ -901,7 +1833,7 @@ public class RouteFileUtils {
             kmlActionActuatorFuncParam.setGimbalRotateMode("absoluteAngle");
             if (!Objects.isNull(pointActionReq.getGimbalPitchRotateAngle())) {
                 kmlActionActuatorFuncParam.setGimbalPitchRotateEnable("1");
-                kmlActionActuatorFuncParam.setGimbalPitchRotateAngle(String.valueOf(pointActionReq.getGimbalPitchRotateAngle()));
+                kmlActionActuatorFuncParam.setGimbalPitchRotateAngle(kmlParams.getNumberFormat().format(pointActionReq.getGimbalPitchRotateAngle(), KmlNumberFormat.Field.ANGLE));
             } else {
                 kmlActionActuatorFuncParam.setGimbalPitchRotateEnable("0");
                 kmlActionActuatorFuncParam.setGimbalPitchRotateAngle("0");
@@ -910,7 +1842,7 @@ public class RouteFileUtils {
             kmlActionActuatorFuncParam.setGimbalRollRotateAngle("0");
             if (!Objects.isNull(pointActionReq.getGimbalYawRotateAngle())) {
                 kmlActionActuatorFuncParam.setGimbalYawRotateEnable("1");
-                kmlActionActuatorFuncParam.setGimbalYawRotateAngle(String.valueOf(pointActionReq.getGimbalYawRotateAngle()));
+                kmlActionActuatorFuncParam.setGimbalYawRotateAngle(kmlParams.getNumberFormat().format(pointActionReq.getGimbalYawRotateAngle(), KmlNumberFormat.Field.ANGLE));
             } else {
                 kmlActionActuatorFuncParam.setGimbalYawRotateEnable("0");
                 kmlActionActuatorFuncParam.setGimbalYawRotateAngle("0");
@@ -918,13 +1850,13 @@ public class RouteFileUtils {
             kmlActionActuatorFuncParam.setGimbalRotateTimeEnable("0");
             kmlActionActuatorFuncParam.setGimbalRotateTime("0");
         } else if (StringUtils.equals(actionActuatorFunc, ActionActuatorFuncEnums.ROTATE_YAW.getValue())) {
-            kmlActionActuatorFuncParam.setAircraftHeading(String.valueOf(pointActionReq.getAircraftHeading()));
+            kmlActionActuatorFuncParam.setAircraftHeading(kmlParams.getNumberFormat().format(pointActionReq.getAircraftHeading(), KmlNumberFormat.Field.ANGLE));
             kmlActionActuatorFuncParam.setAircraftPathMode(AircraftPathModeEnums.CLOCKWISE.getValue());
         } else if (StringUtils.equals(actionActuatorFunc, ActionActuatorFuncEnums.HOVER.getValue())) {
-            kmlActionActuatorFuncParam.setHoverTime(String.valueOf(pointActionReq.getHoverTime()));
+            kmlActionActuatorFuncParam.setHoverTime(kmlParams.getNumberFormat().format(pointActionReq.getHoverTime(), KmlNumberFormat.Field.DEFAULT));
         } else if (StringUtils.equals(actionActuatorFunc, ActionActuatorFuncEnums.ZOOM.getValue())) {
             kmlActionActuatorFuncParam.setPayloadPositionIndex(String.valueOf(kmlParams.getPayloadPosition()));
-            kmlActionActuatorFuncParam.setFocalLength(String.valueOf(pointActionReq.getZoom()));
+            kmlActionActuatorFuncParam.setFocalLength(kmlParams.getNumberFormat().format(pointActionReq.getZoom(), KmlNumberFormat.Field.DEFAULT));
         } else if (StringUtils.equals(actionActuatorFunc, ActionActuatorFuncEnums.PANO_SHOT.getValue())) {
             kmlActionActuatorFuncParam.setPayloadPositionIndex(String.valueOf(kmlParams.getPayloadPosition()));
             kmlActionActuatorFuncParam.setUseGlobalPayloadLensIndex(String.valueOf(pointActionReq.getUseGlobalImageFormat()));
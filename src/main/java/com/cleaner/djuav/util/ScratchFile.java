@@ -0,0 +1,101 @@
+package com.cleaner.djuav.util;
+
+import org.apache.commons.io.output.ProxyOutputStream;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * 由 {@link ScratchFileManager} 创建的临时文件，关闭时删除文件并归还预留的空间
+ */
+public class ScratchFile implements Closeable {
+
+    /**
+     * 写入时按块预留空间，减少加锁次数
+     */
+    private static final long RESERVE_BLOCK = 1024 * 1024;
+
+    private final ScratchFileManager manager;
+
+    private final File file;
+
+    private long reservedBytes;
+
+    private boolean closed;
+
+    ScratchFile(ScratchFileManager manager, File file) {
+        this.manager = manager;
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 预先为已知大小的内容预留空间（如上传文件），之后可直接写入 {@link #getFile()}
+     *
+     * @param bytes 字节数
+     * @throws IOException 临时空间不足
+     */
+    public synchronized void reserve(long bytes) throws IOException {
+        if (closed) {
+            throw new IOException("临时文件已删除: " + file);
+        }
+        manager.reserve(bytes);
+        reservedBytes += bytes;
+    }
+
+    /**
+     * 打开输出流，写入时按块预留空间，空间不足时阻塞等待
+     */
+    public OutputStream openOutputStream() throws IOException {
+        return new ProxyOutputStream(new FileOutputStream(file)) {
+
+            private long written;
+
+            @Override
+            protected void beforeWrite(int n) throws IOException {
+                written += n;
+                while (written > reservedBytes) {
+                    reserve(RESERVE_BLOCK);
+                }
+            }
+        };
+    }
+
+    /**
+     * 将输入流写入临时文件，不关闭输入流
+     *
+     * @param inputStream 输入流
+     * @return this
+     * @throws IOException IO异常或临时空间不足
+     */
+    public ScratchFile write(InputStream inputStream) throws IOException {
+        try (OutputStream outputStream = openOutputStream()) {
+            inputStream.transferTo(outputStream);
+        }
+        return this;
+    }
+
+    /**
+     * 删除文件并归还空间，可重复调用
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            Files.deleteIfExists(file.toPath());
+        } finally {
+            manager.release(reservedBytes);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.cleaner.djuav.util;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import com.cleaner.djuav.domain.ScratchUsageVO;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 临时文件管理
+ *
+ * 临时文件统一放在专用目录下，生命周期与请求一致：{@link ScratchFile} 关闭时立即删除并归还占用的空间，
+ * 不再使用 File.deleteOnExit（路径会在 DeleteOnExitHook 中保留到 JVM 退出）。
+ * 所有临时文件共用一个磁盘配额，写入前先预留空间，配额不足时等待其他文件释放，超时后拒绝。
+ *
+ * 同一台机器上的多个实例可以配置同一个目录：每个实例使用自己的子目录 instance-{pid}-{随机数}，
+ * 运行期间持有子目录中 .lock 文件的锁。启动时只删除锁已释放（所属进程已退出）的子目录，不影响正在运行的实例。
+ */
+@Component
+public class ScratchFileManager {
+
+    private static final String INSTANCE_PREFIX = "instance-";
+
+    private static final String LOCK_FILE = ".lock";
+
+    /**
+     * 本实例的子目录
+     */
+    private final Path directory;
+
+    /**
+     * 本实例子目录的锁，进程退出时由操作系统释放
+     */
+    private final FileChannel lockChannel;
+
+    private final FileLock lock;
+
+    /**
+     * 磁盘配额（字节）
+     */
+    private final long quota;
+
+    /**
+     * 配额不足时的最长等待时间
+     */
+    private final long waitTimeoutMillis;
+
+    /**
+     * 已预留的字节数
+     */
+    private long reservedBytes;
+
+    private long peakReservedBytes;
+
+    private int activeFiles;
+
+    private final LongAdder createdFiles = new LongAdder();
+
+    private final LongAdder waitCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public ScratchFileManager(@Value("${wayline-scratch-path:${java.io.tmpdir}/dj-uav-scratch}") String directory,
+                              @Value("${wayline-scratch-quota:2GB}") DataSize quota,
+                              @Value("${wayline-scratch-wait-timeout:30s}") Duration waitTimeout) throws IOException {
+        Path root = Files.createDirectories(Path.of(directory));
+        this.quota = quota.toBytes();
+        this.waitTimeoutMillis = waitTimeout.toMillis();
+        deleteLeftovers(root);
+        this.directory = Files.createDirectories(root.resolve(INSTANCE_PREFIX + ProcessHandle.current().pid() + "-" + IdUtil.fastSimpleUUID().substring(0, 8)));
+        this.lockChannel = FileChannel.open(this.directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.lock = lockChannel.lock();
+    }
+
+    /**
+     * 删除已退出的实例遗留的子目录：能获取到锁说明所属进程已退出
+     */
+    private static void deleteLeftovers(Path root) throws IOException {
+        try (DirectoryStream<Path> instances = Files.newDirectoryStream(root, INSTANCE_PREFIX + "*")) {
+            for (Path instance : instances) {
+                Path lockFile = instance.resolve(LOCK_FILE);
+                if (!Files.isDirectory(instance) || !Files.exists(lockFile)) {
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+                     FileLock leftoverLock = channel.tryLock()) {
+                    if (leftoverLock == null) {
+                        continue;
+                    }
+                } catch (OverlappingFileLockException e) {
+                    // 同一进程中的其他实例正在使用
+                    continue;
+                }
+                FileUtil.del(instance.toFile());
+            }
+        }
+    }
+
+    /**
+     * 删除本实例的子目录并释放锁
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        try {
+            lock.release();
+        } finally {
+            lockChannel.close();
+        }
+        FileUtil.del(directory.toFile());
+    }
+
+    /**
+     * 创建空的临时文件，使用完后必须关闭
+     *
+     * @param suffix 文件后缀，如 .kmz
+     * @return 临时文件
+     * @throws IOException IO异常
+     */
+    public ScratchFile create(String suffix) throws IOException {
+        File file = Files.createTempFile(directory, "scratch-", suffix).toFile();
+        synchronized (this) {
+            activeFiles++;
+        }
+        createdFiles.increment();
+        return new ScratchFile(this, file);
+    }
+
+    /**
+     * 预留空间，配额不足时等待
+     *
+     * @param bytes 字节数
+     * @throws IOException 超过配额、等待超时或被中断
+     */
+    synchronized void reserve(long bytes) throws IOException {
+        if (bytes > quota) {
+            rejectedCount.increment();
+            throw new IOException("临时文件大小 " + bytes + " 超过配额 " + quota);
+        }
+        if (reservedBytes + bytes > quota) {
+            waitCount.increment();
+            long deadline = System.currentTimeMillis() + waitTimeoutMillis;
+            while (reservedBytes + bytes > quota) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    rejectedCount.increment();
+                    throw new IOException("临时空间不足，已使用 " + reservedBytes + "，配额 " + quota);
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待临时空间时被中断");
+                }
+            }
+        }
+        reservedBytes += bytes;
+        peakReservedBytes = Math.max(peakReservedBytes, reservedBytes);
+    }
+
+    /**
+     * 临时文件删除后归还空间
+     */
+    synchronized void release(long bytes) {
+        reservedBytes -= bytes;
+        activeFiles--;
+        notifyAll();
+    }
+
+    /**
+     * 临时空间使用情况
+     */
+    public synchronized ScratchUsageVO getUsage() {
+        ScratchUsageVO usage = new ScratchUsageVO();
+        usage.setDirectory(directory.toString());
+        usage.setQuota(quota);
+        usage.setReservedBytes(reservedBytes);
+        usage.setPeakReservedBytes(peakReservedBytes);
+        usage.setActiveFiles(activeFiles);
+        usage.setCreatedFiles(createdFiles.sum());
+        usage.setWaitCount(waitCount.sum());
+        usage.setRejectedCount(rejectedCount.sum());
+        return usage;
+    }
+}
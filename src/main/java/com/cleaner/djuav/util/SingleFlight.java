@@ -0,0 +1,85 @@
+package com.cleaner.djuav.util;
+
+import org.apache.commons.io.function.IOSupplier;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合并相同键的并发执行
+ *
+ * 同一个键同时只执行一次，执行期间到达的调用等待并共用同一个结果，失败时所有等待方抛出同一个异常。
+ * 执行结束后立即移除，不保留结果；之后的调用重新执行（需要保留结果时由调用方使用缓存）。
+ *
+ * @param <K> 键
+ * @param <V> 结果
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder sharedCount = new LongAdder();
+
+    /**
+     * 执行，相同键正在执行时等待其结果
+     *
+     * @param key    键
+     * @param loader 执行内容，在第一个调用方的线程中执行
+     * @return 结果
+     * @throws IOException 执行失败或等待时被中断
+     */
+    public V execute(K key, IOSupplier<V> loader) throws IOException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            sharedCount.increment();
+            return await(existing);
+        }
+        try {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待并发请求的结果时被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * 正在执行的键数量
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 累计共用其他调用结果的次数
+     */
+    public long getSharedCount() {
+        return sharedCount.sum();
+    }
+}
@@ -0,0 +1,259 @@
+package com.cleaner.djuav.util.kml;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
+import com.thoughtworks.xstream.annotations.XStreamImplicit;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.*;
+
+/**
+ * KML/WPML 对象绑定元数据
+ *
+ * 根据 domain/kml 下 Java Bean 上的 XStream 注解，为每个类型生成一次元素名到属性的映射，
+ * 供流式解析器和写出器复用，避免每次解析都重新扫描注解和反射。
+ *
+ * 映射规则与 RouteFileUtils 中 XStream 的配置保持一致：
+ * - 属性按声明顺序输出（父类在前），@XStreamAsAttribute 的字段作为 XML 属性
+ * - List 类型字段均为隐式集合，元素名取 @XStreamImplicit 的 itemFieldName，否则取元素类型上的 @XStreamAlias
+ * - 多个字段使用同一别名时，解析时以后声明的字段为准
+ */
+public final class KmlBinding {
+
+    private static final ClassValue<KmlBinding> BINDINGS = new ClassValue<>() {
+        @Override
+        protected KmlBinding computeValue(Class<?> type) {
+            return new KmlBinding(type);
+        }
+    };
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Class<?> type;
+
+    private final MethodHandle constructor;
+
+    private final List<Property> properties = new ArrayList<>();
+
+    private final List<Property> attributes = new ArrayList<>();
+
+    private final Map<String, Property> elementIndex = new HashMap<>();
+
+    private final Map<String, Property> attributeIndex = new HashMap<>();
+
+    private KmlBinding(Class<?> type) {
+        this.type = type;
+        try {
+            this.constructor = LOOKUP.findConstructor(type, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("缺少无参构造方法: " + type.getName(), e);
+        }
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+        for (Class<?> c : hierarchy) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                Property property = new Property(field);
+                if (property.attribute) {
+                    attributes.add(property);
+                    attributeIndex.put(property.name, property);
+                } else {
+                    properties.add(property);
+                    elementIndex.put(property.name, property);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取类型的绑定元数据（按类型缓存）
+     *
+     * @param type 带 XStream 注解的 Java Bean 类型
+     * @return 绑定元数据
+     */
+    public static KmlBinding of(Class<?> type) {
+        return BINDINGS.get(type);
+    }
+
+    /**
+     * 类型上 @XStreamAlias 声明的元素名，没有注解时返回类名
+     */
+    public static String aliasOf(Class<?> type) {
+        XStreamAlias alias = type.getAnnotation(XStreamAlias.class);
+        return alias != null ? alias.value() : type.getSimpleName();
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * 按声明顺序排列的子元素属性
+     */
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+    /**
+     * 按声明顺序排列的 XML 属性
+     */
+    public List<Property> getAttributes() {
+        return attributes;
+    }
+
+    public Property element(String name) {
+        return elementIndex.get(name);
+    }
+
+    public Property attribute(String name) {
+        return attributeIndex.get(name);
+    }
+
+    /**
+     * 按字段名查找子元素属性
+     *
+     * @param fieldName Java 字段名
+     * @return 子元素属性，不存在时返回 null
+     */
+    public Property property(String fieldName) {
+        for (Property property : properties) {
+            if (property.getFieldName().equals(fieldName)) {
+                return property;
+            }
+        }
+        return null;
+    }
+
+    public Object newInstance() {
+        try {
+            return (Object) constructor.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("创建对象失败: " + type.getName(), e);
+        }
+    }
+
+    /**
+     * 属性类型
+     */
+    public enum Kind {
+        /**
+         * 文本值
+         */
+        TEXT,
+        /**
+         * 嵌套对象
+         */
+        OBJECT,
+        /**
+         * 隐式集合，每个元素对应一个同名子元素
+         */
+        LIST
+    }
+
+    /**
+     * 单个属性的绑定信息
+     */
+    public static final class Property {
+
+        private final String fieldName;
+
+        private final String name;
+
+        private final Kind kind;
+
+        private final boolean attribute;
+
+        private final Class<?> valueType;
+
+        private final MethodHandle getter;
+
+        private final MethodHandle setter;
+
+        private Property(Field field) {
+            this.fieldName = field.getName();
+            this.attribute = field.isAnnotationPresent(XStreamAsAttribute.class);
+            if (List.class.isAssignableFrom(field.getType())) {
+                this.kind = Kind.LIST;
+                this.valueType = (Class<?>) ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+                XStreamImplicit implicit = field.getAnnotation(XStreamImplicit.class);
+                this.name = implicit != null && !implicit.itemFieldName().isEmpty() ? implicit.itemFieldName() : aliasOf(valueType);
+            } else {
+                this.kind = field.getType() == String.class ? Kind.TEXT : Kind.OBJECT;
+                this.valueType = field.getType();
+                XStreamAlias alias = field.getAnnotation(XStreamAlias.class);
+                this.name = alias != null ? alias.value() : field.getName();
+            }
+            this.getter = accessor(field, true).asType(MethodType.methodType(Object.class, Object.class));
+            this.setter = accessor(field, false).asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+
+        /**
+         * 优先使用 Lombok 生成的 getter/setter，便于子类覆写（如延迟加载）；找不到时退回字段访问
+         */
+        private static MethodHandle accessor(Field field, boolean read) {
+            Class<?> owner = field.getDeclaringClass();
+            String suffix = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+            try {
+                if (read) {
+                    return LOOKUP.findVirtual(owner, "get" + suffix, MethodType.methodType(field.getType()));
+                }
+                return LOOKUP.findVirtual(owner, "set" + suffix, MethodType.methodType(void.class, field.getType()));
+            } catch (ReflectiveOperationException e) {
+                try {
+                    field.setAccessible(true);
+                    return read ? LOOKUP.unreflectGetter(field) : LOOKUP.unreflectSetter(field);
+                } catch (IllegalAccessException ex) {
+                    throw new IllegalStateException("无法访问字段: " + owner.getName() + "." + field.getName(), ex);
+                }
+            }
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        /**
+         * XML 元素名或属性名（含 wpml: 前缀）
+         */
+        public String getName() {
+            return name;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * 属性值类型，LIST 时为集合元素类型
+         */
+        public Class<?> getValueType() {
+            return valueType;
+        }
+
+        public Object get(Object target) {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (Throwable e) {
+                throw new IllegalStateException("读取属性失败: " + fieldName, e);
+            }
+        }
+
+        public void set(Object target, Object value) {
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException("设置属性失败: " + fieldName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.cleaner.djuav.util.kml;
+
+/**
+ * KML/WPML 数值格式化
+ *
+ * 数值直接追加到可复用的 StringBuilder 中，不经过 String.valueOf(Double) 的装箱和中间字符串：
+ * - 精度为负数时输出最短往返表示（与 Double.toString 相同）
+ * - 精度为 0~15 时按固定小数位四舍五入，并去掉末尾多余的 0（至少保留一位小数，如 20.0）
+ *
+ * 各字段类型的小数位数可通过配置调整，默认坐标 8 位（约 1 毫米）、速度 1 位，其余字段最短往返表示。
+ * 实例不可变，修改精度时返回新的实例，不同配置互不影响。
+ */
+public final class KmlNumberFormat {
+
+    /**
+     * 默认精度
+     */
+    public static final KmlNumberFormat DEFAULT = new KmlNumberFormat();
+
+    /**
+     * 数值字段类型
+     */
+    public enum Field {
+
+        /**
+         * 经纬度
+         */
+        COORDINATE(8),
+
+        /**
+         * 高度
+         */
+        HEIGHT(-1),
+
+        /**
+         * 速度
+         */
+        SPEED(1),
+
+        /**
+         * 角度（偏航角、云台角度）
+         */
+        ANGLE(-1),
+
+        /**
+         * 其他数值（距离、时间、焦距等）
+         */
+        DEFAULT(-1);
+
+        private final int defaultPrecision;
+
+        Field(int defaultPrecision) {
+            this.defaultPrecision = defaultPrecision;
+        }
+
+        public int getDefaultPrecision() {
+            return defaultPrecision;
+        }
+    }
+
+    private static final int MAX_PRECISION = 15;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_PRECISION + 1];
+
+    /**
+     * 超过该值时 long 无法精确表示缩放后的数值，退回最短往返表示
+     */
+    private static final double MAX_SCALED = 1e15;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(32));
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_PRECISION; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * 各字段类型的小数位数，按 {@link Field#ordinal()} 索引
+     */
+    private final int[] precisions;
+
+    private KmlNumberFormat() {
+        precisions = new int[Field.values().length];
+        for (Field field : Field.values()) {
+            precisions[field.ordinal()] = field.getDefaultPrecision();
+        }
+    }
+
+    private KmlNumberFormat(int[] precisions) {
+        this.precisions = precisions;
+    }
+
+    /**
+     * 修改字段类型的小数位数
+     *
+     * @param field     字段类型
+     * @param precision 小数位数，负数表示最短往返表示，超过 15 按 15 处理
+     * @return 新的实例，当前实例不变
+     */
+    public KmlNumberFormat withPrecision(Field field, int precision) {
+        int[] copy = precisions.clone();
+        copy[field.ordinal()] = Math.min(precision, MAX_PRECISION);
+        return new KmlNumberFormat(copy);
+    }
+
+    /**
+     * 字段类型的小数位数
+     */
+    public int getPrecision(Field field) {
+        return precisions[field.ordinal()];
+    }
+
+    /**
+     * 格式化数值
+     *
+     * @param value 数值
+     * @param field 字段类型
+     * @return 格式化后的字符串，value 为 null 时返回 null
+     */
+    public String format(Double value, Field field) {
+        return value == null ? null : format(value.doubleValue(), field);
+    }
+
+    /**
+     * 格式化数值
+     *
+     * @param value 数值
+     * @param field 字段类型
+     * @return 格式化后的字符串
+     */
+    public String format(double value, Field field) {
+        StringBuilder buffer = buffer();
+        append(buffer, value, field);
+        return buffer.toString();
+    }
+
+    /**
+     * 格式化 "经度,纬度"
+     */
+    public String formatCoordinates(double longitude, double latitude) {
+        StringBuilder buffer = buffer();
+        append(buffer, longitude, Field.COORDINATE);
+        buffer.append(',');
+        append(buffer, latitude, Field.COORDINATE);
+        return buffer.toString();
+    }
+
+    /**
+     * 获取当前线程的格式化缓冲区（已清空），用于拼接多个数值后只生成一次字符串
+     */
+    public static StringBuilder buffer() {
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    /**
+     * 按字段类型的精度追加数值
+     */
+    public void append(StringBuilder buffer, double value, Field field) {
+        append(buffer, value, getPrecision(field));
+    }
+
+    /**
+     * 按指定精度追加数值
+     *
+     * @param buffer    输出缓冲区
+     * @param value     数值
+     * @param precision 小数位数，负数表示最短往返表示
+     */
+    public static void append(StringBuilder buffer, double value, int precision) {
+        if (precision < 0 || Double.isNaN(value) || Double.isInfinite(value)) {
+            buffer.append(value);
+            return;
+        }
+        double scaled = Math.abs(value) * POWERS_OF_TEN[precision];
+        if (scaled >= MAX_SCALED) {
+            buffer.append(value);
+            return;
+        }
+        long units = Math.round(scaled);
+        if (units == 0) {
+            buffer.append("0.0");
+            return;
+        }
+        if (value < 0) {
+            buffer.append('-');
+        }
+        long integerPart = units / POWERS_OF_TEN[precision];
+        long fraction = units % POWERS_OF_TEN[precision];
+        buffer.append(integerPart).append('.');
+        if (fraction == 0) {
+            buffer.append('0');
+            return;
+        }
+        int digits = precision;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        // 补齐小数部分的前导 0
+        for (int i = digits - 1; i > 0 && fraction < POWERS_OF_TEN[i]; i--) {
+            buffer.append('0');
+        }
+        buffer.append(fraction);
+    }
+}
@@ -0,0 +1,29 @@
+package com.cleaner.djuav.util.kml;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * kml 解析引擎
+ */
+public enum KmlParser {
+
+    /**
+     * StAX 流式解析，直接由 XML 事件构建对象（默认）
+     */
+    STAX,
+
+    /**
+     * XStream 解析，结果与 StAX 一致，不支持航点延迟解码
+     */
+    XSTREAM;
+
+    /**
+     * 按名称解析，忽略大小写
+     *
+     * @param value stax 或 xstream，其他值按 stax 处理
+     * @return 解析引擎
+     */
+    public static KmlParser of(String value) {
+        return StringUtils.equalsIgnoreCase(StringUtils.trim(value), "xstream") ? XSTREAM : STAX;
+    }
+}
@@ -0,0 +1,104 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.kml.KmlMissionConfig;
+import com.cleaner.djuav.domain.kml.KmlPlacemark;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * KML/WPML 文件的局部修改
+ *
+ * 描述需要替换的 wpml:missionConfig 字段和航点，由 {@link KmlStreamPatcher} 在复制原文件时替换，
+ * 未修改的内容按原始字节复制。
+ */
+public class KmlPatch {
+
+    /**
+     * 元素名称 -> 新值，按设置顺序
+     */
+    private final Map<String, String> missionConfig = new LinkedHashMap<>();
+
+    private List<KmlPlacemark> placemarkList;
+
+    private WaypointEditPlan waypointEditPlan;
+
+    private List<KmlPlacemark> addedPlacemarkList;
+
+    /**
+     * 替换 missionConfig 中的字段，原文件中没有该字段时追加到 missionConfig 末尾
+     *
+     * @param fieldName KmlMissionConfig 的字段名，如 finishAction
+     * @param value     新值
+     * @return this
+     */
+    public KmlPatch setMissionConfig(String fieldName, String value) {
+        KmlBinding.Property property = KmlBinding.of(KmlMissionConfig.class).property(fieldName);
+        if (property == null || property.getKind() != KmlBinding.Kind.TEXT) {
+            throw new IllegalArgumentException("missionConfig 不支持修改字段: " + fieldName);
+        }
+        missionConfig.put(property.getName(), value);
+        return this;
+    }
+
+    /**
+     * 替换全部航点
+     *
+     * @param placemarkList 新的航点，写出时才逐个访问（可为按需构建的列表）
+     * @return this
+     */
+    public KmlPatch setPlacemarkList(List<KmlPlacemark> placemarkList) {
+        this.placemarkList = placemarkList;
+        return this;
+    }
+
+    /**
+     * 按编辑计划插入、删除、移动、替换航点
+     *
+     * 原航点按原始字节输出，只重写 wpml:index 和动作组的起止航点编号；新增航点按新增序号从列表中取出后写出
+     *
+     * @param waypointEditPlan   编辑计划
+     * @param addedPlacemarkList 新增航点，按新增序号排列
+     * @return this
+     */
+    public KmlPatch setWaypointEdit(WaypointEditPlan waypointEditPlan, List<KmlPlacemark> addedPlacemarkList) {
+        this.waypointEditPlan = waypointEditPlan;
+        this.addedPlacemarkList = addedPlacemarkList;
+        return this;
+    }
+
+    /**
+     * 元素名称 -> 新值
+     */
+    public Map<String, String> getMissionConfig() {
+        return Collections.unmodifiableMap(missionConfig);
+    }
+
+    /**
+     * 新的航点，为 null 时航点不变
+     */
+    public List<KmlPlacemark> getPlacemarkList() {
+        return placemarkList;
+    }
+
+    public WaypointEditPlan getWaypointEditPlan() {
+        return waypointEditPlan;
+    }
+
+    public List<KmlPlacemark> getAddedPlacemarkList() {
+        return addedPlacemarkList;
+    }
+
+    /**
+     * 是否修改航点
+     */
+    public boolean hasPlacemarkChange() {
+        return placemarkList != null || waypointEditPlan != null;
+    }
+
+    public boolean isEmpty() {
+        return missionConfig.isEmpty() && !hasPlacemarkChange();
+    }
+}
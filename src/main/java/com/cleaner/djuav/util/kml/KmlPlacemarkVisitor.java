@@ -0,0 +1,68 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.kml.KmlInfo;
+import com.cleaner.djuav.domain.kml.KmlPlacemark;
+
+/**
+ * 航点逐个回调接口
+ *
+ * 解析时每解码出一个 Placemark 就回调一次，不会在 KmlFolder 中累积航点列表，
+ * 可用于统计、导出、校验等需要遍历超大航线但不需要保留全部航点的场景。
+ *
+ * 回调顺序：onHeader -> onPlacemark（按文件顺序，0 次或多次） -> onEnd
+ * continueAfterHeader 返回 false 时只回调 onHeader。
+ */
+public interface KmlPlacemarkVisitor {
+
+    /**
+     * 文件头解析完成：missionConfig 以及 Folder 中位于第一个 Placemark 之前的全局参数已填充，placemarkList 为 null
+     *
+     * @param fileType 文件类型 (KML 或 WPML)
+     * @param header   文件头
+     */
+    default void onHeader(String fileType, KmlInfo header) {
+    }
+
+    /**
+     * 文件头之后是否继续解析，返回 false 时在第一个 Placemark 处停止读取，不再回调 onPlacemark、onEnd
+     *
+     * @param fileType 文件类型 (KML 或 WPML)
+     */
+    default boolean continueAfterHeader(String fileType) {
+        return true;
+    }
+
+    /**
+     * 解码出一个航点
+     *
+     * @param fileType  文件类型 (KML 或 WPML)
+     * @param placemark 航点
+     */
+    void onPlacemark(String fileType, KmlPlacemark placemark);
+
+    /**
+     * 是否解码航点，返回 false 时 Placemark 元素被直接跳过，改为回调 onPlacemarkSkipped
+     *
+     * @param fileType 文件类型 (KML 或 WPML)
+     */
+    default boolean decodePlacemarks(String fileType) {
+        return true;
+    }
+
+    /**
+     * 跳过一个未解码的航点
+     *
+     * @param fileType 文件类型 (KML 或 WPML)
+     */
+    default void onPlacemarkSkipped(String fileType) {
+    }
+
+    /**
+     * 文件解析完成，Folder 中位于 Placemark 之后的元素（如 wpml:startActionGroup）也已填充，placemarkList 仍为 null
+     *
+     * @param fileType 文件类型 (KML 或 WPML)
+     * @param kmlInfo  与 onHeader 中为同一对象
+     */
+    default void onEnd(String fileType, KmlInfo kmlInfo) {
+    }
+}
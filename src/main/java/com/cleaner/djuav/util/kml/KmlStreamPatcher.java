@@ -0,0 +1,584 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.kml.KmlActionGroup;
+import com.cleaner.djuav.domain.kml.KmlFolder;
+import com.cleaner.djuav.domain.kml.KmlMissionConfig;
+import com.cleaner.djuav.domain.kml.KmlPlacemark;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * KML/WPML 文件的流式局部修改
+ *
+ * 按标签扫描原文件字节，未修改的文本、标签、注释原样复制到输出流，只替换 {@link KmlPatch} 中指定的元素：
+ * - wpml:missionConfig 的直接子元素：替换文本，原文件中没有时追加到 missionConfig 末尾
+ * - Placemark：在第一个 Placemark 的位置写出新的航点，其余 Placemark 连同之前的空白一起去掉；
+ *   原文件中没有航点时写到 Folder 末尾
+ * - 按 {@link WaypointEditPlan} 编辑航点：原航点按原始字节输出，只重写 wpml:index 与动作组起止编号，
+ *   需要提前输出的航点暂存其原始字节；要求 Placemark 连续出现，且 wpml:index 与航点顺序一致
+ * 只修改 missionConfig 时不解析任何对象，耗时与复制文件相当。
+ *
+ * 与 {@link LazyKmlFolder} 相同，按 UTF-8 字节匹配标签名，不支持其他编码的文件。
+ */
+public class KmlStreamPatcher {
+
+    private static final byte[] MISSION_CONFIG = KmlBinding.aliasOf(KmlMissionConfig.class).getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] FOLDER = KmlBinding.aliasOf(KmlFolder.class).getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] PLACEMARK = KmlBinding.aliasOf(KmlPlacemark.class).getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] INDEX_START = ("<" + KmlBinding.of(KmlPlacemark.class).property("index").getName() + ">").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] GROUP_START_INDEX_START = ("<" + KmlBinding.of(KmlActionGroup.class).property("actionGroupStartIndex").getName() + ">").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] GROUP_END_INDEX_START = ("<" + KmlBinding.of(KmlActionGroup.class).property("actionGroupEndIndex").getName() + ">").getBytes(StandardCharsets.UTF_8);
+
+    private static final String INDENT = "  ";
+
+    private final InputStream in;
+
+    private final OutputStream out;
+
+    private final KmlPatch patch;
+
+    private final byte[] buffer = new byte[64 * 1024];
+
+    private int position;
+
+    private int limit;
+
+    /**
+     * 当前标签（含尖括号）
+     */
+    private byte[] tag = new byte[256];
+
+    private int tagLength;
+
+    private int nameStart;
+
+    private int nameEnd;
+
+    /**
+     * 尚未写出的空白，遇到下一个标签时再决定是否保留
+     */
+    private byte[] whitespace = new byte[256];
+
+    private int whitespaceLength;
+
+    /**
+     * 已打开的元素个数
+     */
+    private int depth;
+
+    /**
+     * missionConfig 元素打开后的层级，不在 missionConfig 中时为 -1
+     */
+    private int missionConfigDepth = -1;
+
+    private final Set<String> replaced = new HashSet<>();
+
+    private boolean placemarksWritten;
+
+    /**
+     * 当前标签已读取但尚未处理（读取下一个航点时读到了其他标签）
+     */
+    private boolean tagPending;
+
+    /**
+     * 读取时同时记录原始字节，用于暂存航点
+     */
+    private UnsynchronizedByteArrayOutputStream capture;
+
+    private KmlStreamPatcher(InputStream in, OutputStream out, KmlPatch patch) {
+        this.in = in;
+        this.out = out;
+        this.patch = patch;
+    }
+
+    /**
+     * 复制 KML/WPML 文件并应用修改，不会关闭输入流和输出流
+     *
+     * @param inputStream  原文件
+     * @param outputStream 输出流，写完后只刷新不关闭
+     * @param patch        修改内容
+     * @throws IOException IO异常或文件格式错误
+     */
+    public static void patch(InputStream inputStream, OutputStream outputStream, KmlPatch patch) throws IOException {
+        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, 64 * 1024);
+        if (patch.isEmpty()) {
+            inputStream.transferTo(bufferedOutputStream);
+        } else {
+            new KmlStreamPatcher(inputStream, bufferedOutputStream, patch).run();
+        }
+        bufferedOutputStream.flush();
+    }
+
+    private void run() throws IOException {
+        while (tagPending || fill()) {
+            if (tagPending) {
+                tagPending = false;
+                handleTag();
+                continue;
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '<') {
+                position++;
+            }
+            copyText(start, position);
+            if (position < limit) {
+                readTag();
+                handleTag();
+            }
+        }
+        flushWhitespace();
+    }
+
+    /**
+     * 标签之间的文本：末尾的空白暂不写出
+     */
+    private void copyText(int start, int end) throws IOException {
+        int lastText = end - 1;
+        while (lastText >= start && isWhitespace(buffer[lastText])) {
+            lastText--;
+        }
+        if (lastText >= start) {
+            flushWhitespace();
+            out.write(buffer, start, lastText + 1 - start);
+        }
+        for (int i = lastText + 1; i < end; i++) {
+            appendWhitespace(buffer[i]);
+        }
+    }
+
+    private void appendWhitespace(byte b) {
+        if (whitespaceLength == whitespace.length) {
+            whitespace = Arrays.copyOf(whitespace, whitespaceLength * 2);
+        }
+        whitespace[whitespaceLength++] = b;
+    }
+
+    private void handleTag() throws IOException {
+        byte first = tag[1];
+        if (first == '!' || first == '?') {
+            // 注释、CDATA、声明原样复制
+            writeTag();
+            return;
+        }
+        if (first == '/') {
+            depth--;
+            if (missionConfigDepth >= 0 && nameIs(MISSION_CONFIG)) {
+                appendMissionConfig();
+                missionConfigDepth = -1;
+            } else if (nameIs(FOLDER) && patch.hasPlacemarkChange() && !placemarksWritten) {
+                // 原文件没有航点，写到 Folder 末尾
+                boolean compact = whitespaceLength == 0;
+                if (!compact) {
+                    out.write(lineBreak(depth + 1));
+                }
+                writePlacemarks(depth + 1, compact, false);
+            }
+            writeTag();
+            return;
+        }
+        boolean selfClosing = tag[tagLength - 2] == '/';
+        if (nameIs(PLACEMARK) && patch.hasPlacemarkChange()) {
+            if (placemarksWritten) {
+                whitespaceLength = 0;
+                if (!selfClosing) {
+                    skipElement();
+                }
+            } else {
+                boolean compact = whitespaceLength == 0;
+                flushWhitespace();
+                writePlacemarks(depth, compact, true);
+            }
+            return;
+        }
+        if (missionConfigDepth >= 0 && depth == missionConfigDepth) {
+            String name = new String(tag, nameStart, nameEnd - nameStart, StandardCharsets.UTF_8);
+            String value = patch.getMissionConfig().get(name);
+            if (value != null) {
+                flushWhitespace();
+                KmlStreamWriter.writeTextElement(name, value, out);
+                replaced.add(name);
+                if (!selfClosing) {
+                    skipElement();
+                }
+                return;
+            }
+        }
+        writeTag();
+        if (!selfClosing) {
+            depth++;
+            if (nameIs(MISSION_CONFIG)) {
+                missionConfigDepth = depth;
+            }
+        }
+    }
+
+    /**
+     * 原文件中没有的 missionConfig 字段追加到末尾，缩进与其他子元素一致
+     */
+    private void appendMissionConfig() throws IOException {
+        boolean compact = whitespaceLength == 0;
+        for (Map.Entry<String, String> entry : patch.getMissionConfig().entrySet()) {
+            if (!replaced.contains(entry.getKey())) {
+                if (!compact) {
+                    out.write(lineBreak(depth + 1));
+                }
+                KmlStreamWriter.writeTextElement(entry.getKey(), entry.getValue(), out);
+            }
+        }
+    }
+
+    /**
+     * 写出新的航点
+     *
+     * @param placemarkDepth Placemark 所在层级
+     * @param compact        是否紧凑输出
+     * @param atPlacemark    当前标签是否为第一个 Placemark 的开始标签，是则原航点由此开始读取
+     */
+    private void writePlacemarks(int placemarkDepth, boolean compact, boolean atPlacemark) throws IOException {
+        placemarksWritten = true;
+        if (patch.getWaypointEditPlan() != null) {
+            writeEditedPlacemarks(placemarkDepth, compact, atPlacemark);
+            return;
+        }
+        KmlStreamWriter.writePlacemarks(patch.getPlacemarkList(), out, placemarkDepth, compact);
+        if (atPlacemark && !isSelfClosing()) {
+            skipElement();
+        }
+    }
+
+    /**
+     * 按编辑计划输出航点：原航点按文件顺序读取，轮到输出时直接写出，需要之后才输出的暂存原始字节
+     */
+    private void writeEditedPlacemarks(int placemarkDepth, boolean compact, boolean atPlacemark) throws IOException {
+        WaypointEditPlan plan = patch.getWaypointEditPlan();
+        int[] newPositions = plan.newPositions();
+        IntUnaryOperator originalIndex = index -> index >= 0 && index < newPositions.length ? newPositions[index] : -1;
+        Map<Integer, byte[]> held = new HashMap<>();
+        UnsynchronizedByteArrayOutputStream added = UnsynchronizedByteArrayOutputStream.builder().get();
+        int readCount = 0;
+        boolean first = atPlacemark;
+        for (int position = 0; position < plan.size(); position++) {
+            if (position > 0 && !compact) {
+                out.write(lineBreak(placemarkDepth));
+            }
+            if (plan.isOriginal(position)) {
+                int ordinal = plan.originalOrdinal(position);
+                byte[] content = held.remove(ordinal);
+                while (content == null) {
+                    byte[] read = readOriginalPlacemark(first);
+                    first = false;
+                    if (read == null) {
+                        throw new IOException("文件中的航点数量少于 " + plan.getOriginalCount());
+                    }
+                    int readOrdinal = readCount++;
+                    if (readOrdinal == ordinal) {
+                        content = read;
+                    } else if (readOrdinal < newPositions.length && newPositions[readOrdinal] >= 0) {
+                        held.put(readOrdinal, read);
+                    }
+                }
+                writeRenumbered(content, content.length, position, originalIndex);
+            } else {
+                added.reset();
+                KmlStreamWriter.writePlacemarks(List.of(patch.getAddedPlacemarkList().get(plan.addedOrdinal(position))), added, placemarkDepth, compact);
+                writeRenumbered(added.toByteArray(), added.size(), position, IntUnaryOperator.identity());
+            }
+        }
+        // 剩余的为已删除的航点
+        if (atPlacemark) {
+            while (readOriginalPlacemark(first) != null) {
+                first = false;
+                readCount++;
+            }
+        }
+        if (readCount != plan.getOriginalCount()) {
+            throw new IOException("文件中的航点数量为 " + readCount + "，与编辑计划的 " + plan.getOriginalCount() + " 不符");
+        }
+    }
+
+    /**
+     * 读取下一个原航点的原始字节（不含之前的空白）
+     *
+     * @param first 当前标签是否即为该航点的开始标签
+     * @return 原始字节，后面不再是 Placemark 时返回 null，读到的标签留待主循环处理
+     */
+    private byte[] readOriginalPlacemark(boolean first) throws IOException {
+        if (!first) {
+            // 航点之间的空白暂存，后面不再是 Placemark 时保留
+            byte b;
+            while (fill() && (b = buffer[position]) != '<') {
+                position++;
+                appendWhitespace(b);
+            }
+            if (!fill()) {
+                return null;
+            }
+            readTag();
+            if (tag[1] == '/' || tag[1] == '!' || tag[1] == '?' || !nameIs(PLACEMARK)) {
+                tagPending = true;
+                return null;
+            }
+            whitespaceLength = 0;
+        }
+        capture = UnsynchronizedByteArrayOutputStream.builder().setBufferSize(Math.max(1024, tagLength * 2)).get();
+        capture.write(tag, 0, tagLength);
+        if (!isSelfClosing()) {
+            skipElement();
+        }
+        byte[] content = capture.toByteArray();
+        capture = null;
+        return content;
+    }
+
+    /**
+     * 写出航点原始字节，wpml:index 改为新的位置；动作组起止编号等于原 wpml:index 时同样改为新的位置，
+     * 指向其他航点时按 mapIndex 换算。
+     * 起止编号对应的航点已删除时，收缩到原范围内最近的未删除航点（起点向后、终点向前找），
+     * 范围内的航点全部删除时改为新的位置；移动航点导致起点大于终点时交换起止编号。
+     */
+    private void writeRenumbered(byte[] content, int length, int newIndex, IntUnaryOperator mapIndex) throws IOException {
+        // 先找出全部编号，动作组的起止编号需要一起换算
+        List<IndexText> indexTexts = new ArrayList<>();
+        Integer ownIndex = null;
+        for (int i = 0; i < length; i++) {
+            if (content[i] != '<') {
+                continue;
+            }
+            byte[] start = startsWith(content, i, length, INDEX_START) ? INDEX_START
+                    : startsWith(content, i, length, GROUP_START_INDEX_START) ? GROUP_START_INDEX_START
+                    : startsWith(content, i, length, GROUP_END_INDEX_START) ? GROUP_END_INDEX_START
+                    : null;
+            if (start == null) {
+                continue;
+            }
+            int textStart = i + start.length;
+            int textEnd = textStart;
+            while (textEnd < length && content[textEnd] != '<') {
+                textEnd++;
+            }
+            Integer value = parseIndex(content, textStart, textEnd);
+            if (start == INDEX_START) {
+                // 新增航点未指定编号时同样改为新的位置
+                ownIndex = value;
+                indexTexts.add(new IndexText(start, textStart, textEnd, newIndex));
+            } else if (value != null) {
+                indexTexts.add(new IndexText(start, textStart, textEnd, value));
+            }
+            i = textEnd - 1;
+        }
+        Integer own = ownIndex;
+        IntUnaryOperator map = value -> own != null && value == own ? newIndex : mapIndex.applyAsInt(value);
+
+        int[] replacements = new int[indexTexts.size()];
+        for (int i = 0; i < indexTexts.size(); i++) {
+            IndexText indexText = indexTexts.get(i);
+            if (indexText.start() == INDEX_START) {
+                replacements[i] = newIndex;
+            } else if (indexText.start() == GROUP_START_INDEX_START && i + 1 < indexTexts.size() && indexTexts.get(i + 1).start() == GROUP_END_INDEX_START) {
+                int from = indexText.value();
+                int to = indexTexts.get(i + 1).value();
+                int mappedFrom = map.applyAsInt(from);
+                for (int index = from + 1; mappedFrom < 0 && index <= to; index++) {
+                    mappedFrom = map.applyAsInt(index);
+                }
+                int mappedTo = map.applyAsInt(to);
+                for (int index = to - 1; mappedTo < 0 && index >= from; index--) {
+                    mappedTo = map.applyAsInt(index);
+                }
+                if (mappedFrom < 0 || mappedTo < 0) {
+                    mappedFrom = newIndex;
+                    mappedTo = newIndex;
+                }
+                replacements[i] = Math.min(mappedFrom, mappedTo);
+                replacements[++i] = Math.max(mappedFrom, mappedTo);
+            } else {
+                int mapped = map.applyAsInt(indexText.value());
+                replacements[i] = mapped < 0 ? newIndex : mapped;
+            }
+        }
+
+        int copied = 0;
+        for (int i = 0; i < indexTexts.size(); i++) {
+            IndexText indexText = indexTexts.get(i);
+            out.write(content, copied, indexText.textStart() - copied);
+            out.write(String.valueOf(replacements[i]).getBytes(StandardCharsets.US_ASCII));
+            copied = indexText.textEnd();
+        }
+        out.write(content, copied, length - copied);
+    }
+
+    /**
+     * 航点字节中的一个编号
+     *
+     * @param start     所在元素的开始标签
+     * @param textStart 编号文本的起始位置
+     * @param textEnd   编号文本的结束位置
+     * @param value     原编号
+     */
+    private record IndexText(byte[] start, int textStart, int textEnd, int value) {
+    }
+
+    private static Integer parseIndex(byte[] content, int start, int end) {
+        try {
+            return Integer.valueOf(new String(content, start, end - start, StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean startsWith(byte[] content, int from, int length, byte[] prefix) {
+        return from + prefix.length <= length && Arrays.equals(content, from, from + prefix.length, prefix, 0, prefix.length);
+    }
+
+    private boolean isSelfClosing() {
+        return tag[tagLength - 2] == '/';
+    }
+
+    private static byte[] lineBreak(int depth) {
+        return ("\n" + INDENT.repeat(depth)).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void writeTag() throws IOException {
+        flushWhitespace();
+        out.write(tag, 0, tagLength);
+    }
+
+    private void flushWhitespace() throws IOException {
+        if (whitespaceLength > 0) {
+            out.write(whitespace, 0, whitespaceLength);
+            whitespaceLength = 0;
+        }
+    }
+
+    private boolean nameIs(byte[] name) {
+        return Arrays.equals(tag, nameStart, nameEnd, name, 0, name.length);
+    }
+
+    /**
+     * 读取从 '<' 开始的完整标签：注释读到 "-->"，CDATA 读到 "]]>"，处理指令读到 "?>"，
+     * 其他标签读到引号之外的 '>'
+     */
+    private void readTag() throws IOException {
+        tagLength = 0;
+        appendTag(next());
+        readTagBody();
+    }
+
+    /**
+     * 读取 '<' 之后的标签内容
+     */
+    private void readTagBody() throws IOException {
+        byte first = appendTag(next());
+        if (first == '!' && appendTag(next()) == '-' && appendTag(next()) == '-') {
+            readTagUntil("-->");
+        } else if (first == '!' && tag[2] == '[') {
+            readTagUntil("]]>");
+        } else if (first == '?') {
+            readTagUntil("?>");
+        } else {
+            byte quote = 0;
+            byte b = first;
+            while (quote != 0 || b != '>') {
+                b = appendTag(next());
+                if (quote == 0 && (b == '"' || b == '\'')) {
+                    quote = b;
+                } else if (b == quote) {
+                    quote = 0;
+                }
+            }
+        }
+        nameStart = first == '/' ? 2 : 1;
+        nameEnd = nameStart;
+        while (nameEnd < tagLength && !isWhitespace(tag[nameEnd]) && tag[nameEnd] != '/' && tag[nameEnd] != '>') {
+            nameEnd++;
+        }
+    }
+
+    private void readTagUntil(String terminator) throws IOException {
+        byte[] end = terminator.getBytes(StandardCharsets.US_ASCII);
+        while (tagLength < end.length + 2 || !Arrays.equals(tag, tagLength - end.length, tagLength, end, 0, end.length)) {
+            appendTag(next());
+        }
+    }
+
+    private byte appendTag(byte b) {
+        if (tagLength == tag.length) {
+            tag = Arrays.copyOf(tag, tagLength * 2);
+        }
+        tag[tagLength++] = b;
+        return b;
+    }
+
+    /**
+     * 跳过当前元素的内容直到对应的结束标签（含），元素内的子元素一并跳过
+     */
+    private void skipElement() throws IOException {
+        byte[] name = Arrays.copyOfRange(tag, nameStart, nameEnd);
+        int nested = 0;
+        while (true) {
+            byte b;
+            while ((b = next()) != '<') {
+                // 跳过文本
+            }
+            tagLength = 0;
+            appendTag(b);
+            readTagBody();
+            if (tag[1] == '!' || tag[1] == '?') {
+                continue;
+            }
+            boolean sameName = Arrays.equals(tag, nameStart, nameEnd, name, 0, name.length);
+            if (tag[1] == '/') {
+                if (sameName && nested-- == 0) {
+                    return;
+                }
+            } else if (sameName && tag[tagLength - 2] != '/') {
+                nested++;
+            }
+        }
+    }
+
+    private byte next() throws IOException {
+        if (!fill()) {
+            throw new EOFException("kml 文件不完整");
+        }
+        byte b = buffer[position++];
+        if (capture != null) {
+            capture.write(b);
+        }
+        return b;
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        int n = in.readNBytes(buffer, 0, buffer.length);
+        position = 0;
+        limit = n;
+        return n > 0;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
@@ -0,0 +1,249 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.kml.KmlInfo;
+import com.cleaner.djuav.domain.kml.KmlPlacemark;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于 StAX 的 KML/WPML 流式解析器
+ *
+ * 直接根据拉取的 XML 事件构建 KmlInfo/KmlDocument/KmlFolder/KmlPlacemark 等对象，
+ * 元素与属性的对应关系来自 {@link KmlBinding}，解析结果与 XStream 解析结果一致：
+ * - 未知元素忽略
+ * - 文本值保持原样，不做 trim
+ * - 隐式集合（Placemark、wpml:actionGroup、wpml:action）按出现顺序追加
+ *
+ * 传入 {@link KmlPlacemarkVisitor} 时航点逐个回调而不加入 placemarkList，内存占用与航点数量无关。
+ */
+public class KmlStreamReader {
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final XMLStreamReader reader;
+
+    private final StringBuilder text = new StringBuilder(64);
+
+    private final String fileType;
+
+    private final KmlPlacemarkVisitor visitor;
+
+    private KmlInfo root;
+
+    private boolean headerDelivered;
+
+    /**
+     * 文件头之后停止解析
+     */
+    private boolean stopped;
+
+    private KmlStreamReader(XMLStreamReader reader, String fileType, KmlPlacemarkVisitor visitor) {
+        this.reader = reader;
+        this.fileType = fileType;
+        this.visitor = visitor;
+    }
+
+    /**
+     * 创建解析工厂：关闭命名空间处理，使 "wpml:xxx" 与注解中的别名直接对应；禁用 DTD 和外部实体防止 XXE
+     */
+    static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * 解析 KML/WPML 文件，不会关闭传入的输入流
+     *
+     * @param inputStream KML文件输入流
+     * @return KmlInfo 解析后的KML信息对象
+     * @throws XMLStreamException XML 格式错误
+     */
+    public static KmlInfo read(InputStream inputStream) throws XMLStreamException {
+        return read(inputStream, null, null);
+    }
+
+    /**
+     * 解析 KML/WPML 文件并逐个回调航点，不会关闭传入的输入流
+     *
+     * @param inputStream KML文件输入流
+     * @param fileType    文件类型 (KML 或 WPML)，原样传给回调
+     * @param visitor     航点回调，为 null 时航点加入 placemarkList
+     * @return KmlInfo 解析后的KML信息对象，有回调时 placemarkList 为 null；在文件头之后停止时只包含文件头
+     * @throws XMLStreamException XML 格式错误
+     */
+    public static KmlInfo read(InputStream inputStream, String fileType, KmlPlacemarkVisitor visitor) throws XMLStreamException {
+        XMLStreamReader xmlReader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            KmlStreamReader kmlReader = new KmlStreamReader(xmlReader, fileType, visitor);
+            KmlInfo kmlInfo = kmlReader.readRoot();
+            if (visitor != null && !kmlReader.stopped) {
+                kmlReader.deliverHeader();
+                visitor.onEnd(fileType, kmlInfo);
+            }
+            return kmlInfo;
+        } finally {
+            xmlReader.close();
+        }
+    }
+
+    private KmlInfo readRoot() throws XMLStreamException {
+        while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+            // 跳过 XML 声明、注释等
+        }
+        if (!reader.isStartElement()) {
+            throw new XMLStreamException("缺少根元素");
+        }
+        KmlBinding binding = KmlBinding.of(KmlInfo.class);
+        String alias = KmlBinding.aliasOf(KmlInfo.class);
+        if (!alias.equals(reader.getLocalName())) {
+            throw new XMLStreamException("根元素应为 " + alias + "，实际为 " + reader.getLocalName(), reader.getLocation());
+        }
+        root = (KmlInfo) binding.newInstance();
+        readObject(binding, root);
+        return root;
+    }
+
+    private void deliverHeader() {
+        if (!headerDelivered) {
+            headerDelivered = true;
+            visitor.onHeader(fileType, root);
+        }
+    }
+
+    /**
+     * 读取当前元素的属性和子元素到对象中，返回时游标位于当前元素的结束标签
+     */
+    private void readObject(KmlBinding binding, Object target) throws XMLStreamException {
+        readAttributes(binding, target);
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            KmlBinding.Property property = binding.element(reader.getLocalName());
+            if (property == null) {
+                skipElement();
+                continue;
+            }
+            switch (property.getKind()) {
+                case TEXT -> property.set(target, readText());
+                case OBJECT -> {
+                    // 先挂到父对象上再读取内容，回调文件头时已解析的部分可以从根对象访问到
+                    KmlBinding childBinding = KmlBinding.of(property.getValueType());
+                    Object child = childBinding.newInstance();
+                    property.set(target, child);
+                    readObject(childBinding, child);
+                    if (stopped) {
+                        return;
+                    }
+                }
+                case LIST -> {
+                    if (visitor != null && property.getValueType() == KmlPlacemark.class) {
+                        deliverHeader();
+                        if (!visitor.continueAfterHeader(fileType)) {
+                            stopped = true;
+                            return;
+                        }
+                        if (visitor.decodePlacemarks(fileType)) {
+                            visitor.onPlacemark(fileType, (KmlPlacemark) readChild(KmlPlacemark.class));
+                        } else {
+                            skipElement();
+                            visitor.onPlacemarkSkipped(fileType);
+                        }
+                    } else {
+                        appendItem(property, target, readChild(property.getValueType()));
+                    }
+                }
+            }
+        }
+    }
+
+    private Object readChild(Class<?> type) throws XMLStreamException {
+        KmlBinding binding = KmlBinding.of(type);
+        Object child = binding.newInstance();
+        readObject(binding, child);
+        return child;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendItem(KmlBinding.Property property, Object target, Object item) {
+        List<Object> list = (List<Object>) property.get(target);
+        if (list == null) {
+            list = new ArrayList<>();
+            property.set(target, list);
+        }
+        list.add(item);
+    }
+
+    /**
+     * XStream 创建对象时不执行字段初始化，未出现的属性应为 null
+     */
+    private void readAttributes(KmlBinding binding, Object target) {
+        for (KmlBinding.Property property : binding.getAttributes()) {
+            property.set(target, null);
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = reader.getAttributePrefix(i);
+            String name = prefix == null || prefix.isEmpty() ? reader.getAttributeLocalName(i) : prefix + ":" + reader.getAttributeLocalName(i);
+            KmlBinding.Property property = binding.attribute(name);
+            if (property != null) {
+                property.set(target, reader.getAttributeValue(i));
+            }
+        }
+    }
+
+    /**
+     * 读取元素文本，忽略其中嵌套的子元素，返回时游标位于当前元素的结束标签
+     */
+    private String readText() throws XMLStreamException {
+        text.setLength(0);
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                    if (depth == 0) {
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                }
+                case XMLStreamConstants.START_ELEMENT -> depth++;
+                case XMLStreamConstants.END_ELEMENT -> {
+                    if (depth-- == 0) {
+                        return text.toString();
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        throw new XMLStreamException("元素未结束", reader.getLocation());
+    }
+
+    /**
+     * 跳过当前元素及其全部子元素
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT && depth-- == 0) {
+                return;
+            }
+        }
+    }
+}
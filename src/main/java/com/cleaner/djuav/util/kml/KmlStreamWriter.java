@@ -0,0 +1,226 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.kml.KmlInfo;
+import com.cleaner.djuav.domain.kml.KmlPlacemark;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * KML/WPML 流式写出器
+ *
+ * 将 KmlInfo 对象树按 {@link KmlBinding} 的映射直接以 UTF-8 写入输出流（如 zip 条目），不生成中间字符串。
+ * 默认格式与 XStream PrettyPrintWriter 的输出逐字节一致（两个空格缩进）；
+ * 紧凑模式不输出换行和缩进，可使 waylines.wpml 体积减少约三成。
+ */
+public class KmlStreamWriter {
+
+    /**
+     * XML 头部
+     */
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+    private static final String INDENT = "  ";
+
+    private final Writer writer;
+
+    private final boolean compact;
+
+    private final Deque<String> elementStack = new ArrayDeque<>();
+
+    private int depth;
+
+    private boolean tagInProgress;
+
+    private boolean readyForNewLine;
+
+    private boolean tagIsEmpty;
+
+    private KmlStreamWriter(Writer writer, boolean compact) {
+        this.writer = writer;
+        this.compact = compact;
+    }
+
+    /**
+     * 写出 KML/WPML 文件，写完后只刷新不关闭输出流，便于继续写入 zip 的其他条目
+     *
+     * @param kmlInfo      kml 文件信息
+     * @param outputStream 输出流
+     * @param compact      是否紧凑输出（无缩进）
+     * @throws IOException IO异常
+     */
+    public static void write(KmlInfo kmlInfo, OutputStream outputStream, boolean compact) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 16 * 1024);
+        KmlStreamWriter kmlWriter = new KmlStreamWriter(writer, compact);
+        writer.write(XML_HEADER);
+        kmlWriter.writeObject(KmlBinding.aliasOf(KmlInfo.class), KmlInfo.class, kmlInfo);
+        writer.flush();
+    }
+
+    /**
+     * 写出一组 Placemark 片段，用于替换已有文件中的航点
+     *
+     * 第一个 Placemark 之前不输出换行（沿用原文件中的缩进），之后的 Placemark 按层级换行缩进
+     *
+     * @param placemarkList 航点
+     * @param outputStream  输出流，写完后只刷新不关闭
+     * @param depth         Placemark 所在层级（祖先元素个数），决定缩进
+     * @param compact       是否紧凑输出（无缩进）
+     * @throws IOException IO异常
+     */
+    public static void writePlacemarks(List<KmlPlacemark> placemarkList, OutputStream outputStream, int depth, boolean compact) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 16 * 1024);
+        KmlStreamWriter kmlWriter = new KmlStreamWriter(writer, compact);
+        kmlWriter.depth = depth;
+        String name = KmlBinding.aliasOf(KmlPlacemark.class);
+        for (KmlPlacemark placemark : placemarkList) {
+            if (placemark != null) {
+                kmlWriter.writeObject(name, KmlPlacemark.class, placemark);
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * 写出单个文本元素，转义规则与完整写出时一致
+     */
+    static void writeTextElement(String name, String text, OutputStream outputStream) throws IOException {
+        Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+        new KmlStreamWriter(writer, true).writeText(name, text);
+        writer.flush();
+    }
+
+    /**
+     * 写出对象及其属性，子元素顺序与字段声明顺序一致，null 值不输出
+     * 按声明类型而非运行时类型取绑定，子类（如延迟加载的 Folder）只通过覆写的 getter 生效
+     */
+    void writeObject(String name, Class<?> type, Object value) throws IOException {
+        KmlBinding binding = KmlBinding.of(type);
+        startNode(name);
+        for (KmlBinding.Property property : binding.getAttributes()) {
+            Object attribute = property.get(value);
+            if (attribute != null) {
+                addAttribute(property.getName(), attribute.toString());
+            }
+        }
+        for (KmlBinding.Property property : binding.getProperties()) {
+            Object child = property.get(value);
+            if (child == null) {
+                continue;
+            }
+            switch (property.getKind()) {
+                case TEXT -> writeText(property.getName(), (String) child);
+                case OBJECT -> writeObject(property.getName(), property.getValueType(), child);
+                case LIST -> {
+                    for (Object item : (List<?>) child) {
+                        if (item != null) {
+                            writeObject(property.getName(), property.getValueType(), item);
+                        }
+                    }
+                }
+            }
+        }
+        endNode();
+    }
+
+    private void writeText(String name, String text) throws IOException {
+        startNode(name);
+        setValue(text);
+        endNode();
+    }
+
+    private void startNode(String name) throws IOException {
+        tagIsEmpty = false;
+        finishTag();
+        writer.write('<');
+        writer.write(name);
+        elementStack.push(name);
+        tagInProgress = true;
+        depth++;
+        readyForNewLine = true;
+        tagIsEmpty = true;
+    }
+
+    private void addAttribute(String name, String value) throws IOException {
+        writer.write(' ');
+        writer.write(name);
+        writer.write("=\"");
+        escape(value, true);
+        writer.write('"');
+    }
+
+    private void setValue(String text) throws IOException {
+        readyForNewLine = false;
+        tagIsEmpty = false;
+        finishTag();
+        escape(text, false);
+    }
+
+    private void endNode() throws IOException {
+        depth--;
+        String name = elementStack.pop();
+        if (tagIsEmpty) {
+            writer.write("/>");
+            readyForNewLine = false;
+        } else {
+            finishTag();
+            writer.write("</");
+            writer.write(name);
+            writer.write('>');
+        }
+        readyForNewLine = true;
+    }
+
+    private void finishTag() throws IOException {
+        if (tagInProgress) {
+            writer.write('>');
+        }
+        tagInProgress = false;
+        if (readyForNewLine) {
+            endOfLine();
+        }
+        readyForNewLine = false;
+        tagIsEmpty = false;
+    }
+
+    private void endOfLine() throws IOException {
+        if (compact) {
+            return;
+        }
+        writer.write('\n');
+        for (int i = 0; i < depth; i++) {
+            writer.write(INDENT);
+        }
+    }
+
+    /**
+     * 转义规则与 XStream PrettyPrintWriter 一致，连续的普通字符整段写出
+     */
+    private void escape(String text, boolean isAttribute) throws IOException {
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            String replacement;
+            switch (c) {
+                case '&' -> replacement = "&amp;";
+                case '<' -> replacement = "&lt;";
+                case '>' -> replacement = "&gt;";
+                case '"' -> replacement = "&quot;";
+                case '\'' -> replacement = "&apos;";
+                case '\r' -> replacement = "&#xd;";
+                case '\t', '\n' -> replacement = isAttribute ? "&#x" + Integer.toHexString(c) + ";" : null;
+                default -> replacement = Character.isDefined(c) && !Character.isISOControl(c) ? null : "&#x" + Integer.toHexString(c) + ";";
+            }
+            if (replacement != null) {
+                writer.write(text, start, i - start);
+                writer.write(replacement);
+                start = i + 1;
+            }
+        }
+        writer.write(text, start, length - start);
+    }
+}
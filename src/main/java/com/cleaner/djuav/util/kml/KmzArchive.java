@@ -0,0 +1,149 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.constant.FileTypeConstants;
+import com.cleaner.djuav.util.RouteFileUtils;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * 基于 zip 中央目录随机读取的 kmz 文件
+ *
+ * 打开时只读取文件末尾的中央目录，之后按偏移量直接定位 template.kml、waylines.wpml，
+ * 不再顺序扫描全部本地文件头；wpmz/res/ 下的资源文件（如倾斜摄影参考图片）只有在请求时才读取。
+ * 底层为 FileChannel 的定位读取，各条目的输入流可在不同线程中同时读取。
+ */
+public final class KmzArchive implements Closeable {
+
+    /**
+     * 资源文件目录
+     */
+    public static final String RES_DIRECTORY = "wpmz/res/";
+
+    private final ZipFile zipFile;
+
+    private final ZipArchiveEntry kmlEntry;
+
+    private final ZipArchiveEntry wpmlEntry;
+
+    private final List<String> resourceNames;
+
+    private KmzArchive(ZipFile zipFile) {
+        this.zipFile = zipFile;
+        ZipArchiveEntry kml = null;
+        ZipArchiveEntry wpml = null;
+        List<String> resources = new ArrayList<>();
+        Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+        while (entries.hasMoreElements()) {
+            ZipArchiveEntry entry = entries.nextElement();
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = entry.getName();
+            String fileType = RouteFileUtils.getFileType(name);
+            if (name.startsWith(RES_DIRECTORY)) {
+                resources.add(name);
+            } else if (kml == null && FileTypeConstants.KML.equals(fileType)) {
+                kml = entry;
+            } else if (wpml == null && FileTypeConstants.WPML.equals(fileType)) {
+                wpml = entry;
+            }
+        }
+        this.kmlEntry = kml;
+        this.wpmlEntry = wpml;
+        this.resourceNames = Collections.unmodifiableList(resources);
+    }
+
+    /**
+     * 打开 kmz 文件
+     *
+     * @param file kmz 文件
+     * @return kmz 文件，使用完后需关闭
+     * @throws IOException 文件不存在或不是有效的 zip 文件
+     */
+    public static KmzArchive open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new KmzArchive(ZipFile.builder().setSeekableByteChannel(channel).get());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public boolean hasKml() {
+        return kmlEntry != null;
+    }
+
+    public boolean hasWpml() {
+        return wpmlEntry != null;
+    }
+
+    /**
+     * 打开 template.kml 输入流
+     */
+    public InputStream openKml() throws IOException {
+        return openEntry(kmlEntry, "template.kml");
+    }
+
+    /**
+     * 打开 waylines.wpml 输入流
+     */
+    public InputStream openWpml() throws IOException {
+        return openEntry(wpmlEntry, "waylines.wpml");
+    }
+
+    /**
+     * wpmz/res/ 下的资源文件名称（完整路径），不读取文件内容
+     */
+    public List<String> getResourceNames() {
+        return resourceNames;
+    }
+
+    /**
+     * 打开资源文件输入流
+     *
+     * @param name 资源文件完整路径，如 wpmz/res/ply/xxx.ply
+     * @return 输入流
+     * @throws IOException 资源文件不存在或读取失败
+     */
+    public InputStream openResource(String name) throws IOException {
+        if (!resourceNames.contains(name)) {
+            throw new IOException("kmz 中不存在资源文件: " + name);
+        }
+        return zipFile.getInputStream(zipFile.getEntry(name));
+    }
+
+    /**
+     * 将 template.kml、waylines.wpml 以外的条目（资源文件等）按原始压缩数据复制到新的 zip，不解压也不重新压缩
+     *
+     * @param zipOutputStream ZIP输出流
+     * @throws IOException IO异常
+     */
+    public void copyOtherEntries(ZipArchiveOutputStream zipOutputStream) throws IOException {
+        zipFile.copyRawEntries(zipOutputStream, entry -> entry != kmlEntry && entry != wpmlEntry);
+    }
+
+    private InputStream openEntry(ZipArchiveEntry entry, String description) throws IOException {
+        if (entry == null) {
+            throw new IOException("kmz 中不存在 " + description);
+        }
+        return zipFile.getInputStream(entry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+}
@@ -0,0 +1,197 @@
+package com.cleaner.djuav.util.kml;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * kmz 条目压缩策略
+ *
+ * 条目始终使用 DEFLATED 方式写入（不压缩时为 0 级），与原有 kmz 文件以及大疆 Pilot 2 的读取方式保持一致：
+ * - STORE：不压缩（默认）
+ * - DEFLATE：按指定级别压缩
+ * - AUTO：条目不超过阈值时不压缩，超过时按指定级别压缩；先缓存阈值以内的数据，确定级别后再开始写条目，可用于流式输出
+ *
+ * 配置格式：store、deflate[:级别]、auto[:阈值[:级别]]，如 deflate:6、auto:1MB:6
+ */
+public final class KmzCompression {
+
+    public enum Mode {
+        STORE, DEFLATE, AUTO
+    }
+
+    /**
+     * 默认压缩级别（速度与体积的折中）
+     */
+    private static final int DEFAULT_LEVEL = 6;
+
+    /**
+     * AUTO 默认阈值
+     */
+    private static final DataSize DEFAULT_THRESHOLD = DataSize.ofMegabytes(1);
+
+    public static final KmzCompression STORE = new KmzCompression(Mode.STORE, Deflater.NO_COMPRESSION, 0);
+
+    private final Mode mode;
+
+    private final int level;
+
+    private final long threshold;
+
+    private KmzCompression(Mode mode, int level, long threshold) {
+        this.mode = mode;
+        this.level = level;
+        this.threshold = threshold;
+    }
+
+    public static KmzCompression deflate(int level) {
+        return new KmzCompression(Mode.DEFLATE, checkLevel(level), 0);
+    }
+
+    public static KmzCompression auto(long threshold, int level) {
+        return new KmzCompression(Mode.AUTO, checkLevel(level), threshold);
+    }
+
+    /**
+     * 解析压缩策略
+     *
+     * @param spec store、deflate[:级别]、auto[:阈值[:级别]]，为空时返回 STORE
+     * @return 压缩策略
+     */
+    public static KmzCompression parse(String spec) {
+        if (StringUtils.isBlank(spec)) {
+            return STORE;
+        }
+        String[] parts = spec.trim().split(":");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "store":
+                    return STORE;
+                case "deflate":
+                    return deflate(parts.length > 1 ? Integer.parseInt(parts[1]) : DEFAULT_LEVEL);
+                case "auto":
+                    long threshold = parts.length > 1 ? DataSize.parse(parts[1]).toBytes() : DEFAULT_THRESHOLD.toBytes();
+                    return auto(threshold, parts.length > 2 ? Integer.parseInt(parts[2]) : DEFAULT_LEVEL);
+                default:
+                    throw new IllegalArgumentException("不支持的压缩策略: " + spec);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("压缩策略格式错误: " + spec, e);
+        }
+    }
+
+    private static int checkLevel(int level) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("压缩级别应为 0~9: " + level);
+        }
+        return level;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 已知条目大小时的压缩级别
+     *
+     * @param size 条目未压缩大小
+     */
+    public int levelFor(long size) {
+        return switch (mode) {
+            case STORE -> Deflater.NO_COMPRESSION;
+            case DEFLATE -> level;
+            case AUTO -> size > threshold ? level : Deflater.NO_COMPRESSION;
+        };
+    }
+
+    /**
+     * 按压缩级别开始一个条目，返回条目内容输出流，关闭该输出流即结束条目
+     */
+    @FunctionalInterface
+    public interface EntryOpener {
+        OutputStream open(int level) throws IOException;
+    }
+
+    /**
+     * 打开按策略压缩的条目输出流
+     *
+     * STORE/DEFLATE 立即开始条目；AUTO 先缓存阈值以内的数据，超过阈值或关闭时才确定压缩级别并开始条目
+     *
+     * @param opener 条目开启方式
+     * @return 条目内容输出流，关闭即结束条目
+     * @throws IOException IO异常
+     */
+    public OutputStream open(EntryOpener opener) throws IOException {
+        if (mode != Mode.AUTO) {
+            return opener.open(levelFor(0));
+        }
+        return new AutoEntryOutputStream(opener);
+    }
+
+    @Override
+    public String toString() {
+        return switch (mode) {
+            case STORE -> "store";
+            case DEFLATE -> "deflate:" + level;
+            case AUTO -> "auto:" + threshold + "B:" + level;
+        };
+    }
+
+    /**
+     * AUTO 策略的条目输出流：数据量超过阈值前只写入缓存
+     */
+    private class AutoEntryOutputStream extends OutputStream {
+
+        private final EntryOpener opener;
+
+        private UnsynchronizedByteArrayOutputStream buffer = UnsynchronizedByteArrayOutputStream.builder().get();
+
+        private OutputStream entry;
+
+        private AutoEntryOutputStream(EntryOpener opener) {
+            this.opener = opener;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (entry != null) {
+                entry.write(b, off, len);
+                return;
+            }
+            buffer.write(b, off, len);
+            if (buffer.size() > threshold) {
+                openEntry();
+            }
+        }
+
+        private void openEntry() throws IOException {
+            entry = opener.open(levelFor(buffer.size()));
+            buffer.writeTo(entry);
+            buffer = null;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (entry != null) {
+                entry.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (entry == null) {
+                openEntry();
+            }
+            entry.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.kml.KmlInfo;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * 预先序列化并压缩好的 kmz 条目
+ *
+ * 可在其他线程中完成 KML/WPML 的构建、序列化和压缩，压缩数据写入调用方提供的存储（如临时文件，不占用堆内存），
+ * 之后由写 zip 的线程按顺序以原始数据（{@link ZipArchiveOutputStream#addRawArchiveEntry}）写入，写入时不再压缩。
+ * 本类只记录条目的大小和 CRC。
+ */
+public final class KmzEntry {
+
+    private final String name;
+
+    private final long size;
+
+    private final long compressedSize;
+
+    private final long crc;
+
+    private KmzEntry(String name, long size, long compressedSize, long crc) {
+        this.name = name;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.crc = crc;
+    }
+
+    /**
+     * 序列化并压缩 KML/WPML 文件
+     *
+     * @param name        条目名称（在ZIP中的路径）
+     * @param kmlInfo     文件内容
+     * @param compression 压缩策略
+     * @param compact     是否紧凑输出（无缩进）
+     * @param data        压缩数据的存储，写完后不关闭
+     * @return 压缩好的条目
+     * @throws IOException IO异常
+     */
+    public static KmzEntry of(String name, KmlInfo kmlInfo, KmzCompression compression, boolean compact, OutputStream data) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(CloseShieldOutputStream.wrap(data));
+        Deflater[] deflater = new Deflater[1];
+        CRC32 crc = new CRC32();
+        try {
+            try (OutputStream entry = compression.open(level -> {
+                deflater[0] = new Deflater(level, true);
+                return new DeflaterOutputStream(counter, deflater[0], 16 * 1024);
+            })) {
+                KmlStreamWriter.write(kmlInfo, new CheckedOutputStream(entry, crc), compact);
+            }
+            return new KmzEntry(name, deflater[0].getBytesRead(), counter.getByteCount(), crc.getValue());
+        } finally {
+            if (deflater[0] != null) {
+                deflater[0].end();
+            }
+        }
+    }
+
+    /**
+     * 以原始数据写入 zip，不再重复压缩
+     *
+     * @param zipOutputStream ZIP输出流
+     * @param data            {@link #of} 写入的压缩数据，不关闭
+     * @throws IOException IO异常
+     */
+    public void writeTo(ZipArchiveOutputStream zipOutputStream, InputStream data) throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setSize(size);
+        entry.setCompressedSize(compressedSize);
+        entry.setCrc(crc);
+        zipOutputStream.addRawArchiveEntry(entry, data);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 未压缩大小
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 压缩后大小
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+}
@@ -0,0 +1,56 @@
+package com.cleaner.djuav.util.kml;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * kmz 解析范围
+ */
+public enum KmzParseScope {
+
+    MISSION_CONFIG("missionConfig", "只解析 template.kml 的文件头（missionConfig 及 Folder 全局参数）和航点数量，读到第一个航点即停止 XML 解析，不读取 waylines.wpml"),
+    KML("kml", "只解析 template.kml"),
+    WPML("wpml", "只解析 waylines.wpml"),
+    FULL("full", "解析 template.kml 和 waylines.wpml");
+
+    private final String value;
+    private final String description;
+
+    KmzParseScope(String value, String description) {
+        this.value = value;
+        this.description = description;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public boolean includesKml() {
+        return this != WPML;
+    }
+
+    public boolean includesWpml() {
+        return this == WPML || this == FULL;
+    }
+
+    /**
+     * 按 value 或枚举名称解析，忽略大小写
+     *
+     * @param value 如 missionConfig、MISSION_CONFIG，为空时返回 FULL
+     * @return 解析范围
+     */
+    public static KmzParseScope of(String value) {
+        if (StringUtils.isBlank(value)) {
+            return FULL;
+        }
+        for (KmzParseScope scope : values()) {
+            if (scope.value.equalsIgnoreCase(value.trim()) || scope.name().equalsIgnoreCase(value.trim())) {
+                return scope;
+            }
+        }
+        throw new IllegalArgumentException("不支持的解析范围: " + value);
+    }
+}
@@ -0,0 +1,194 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.kml.KmlFolder;
+import com.cleaner.djuav.domain.kml.KmlInfo;
+import com.cleaner.djuav.domain.kml.KmlPlacemark;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.beans.BeanUtils;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 延迟解码航点的 KmlFolder
+ *
+ * 解析时只解码文件头和 Folder 的全局参数，Placemark 部分以未解码的字节区间保留，
+ * 第一次调用 getPlacemarkList（包括 JSON 序列化、写出 kml）时才解码，解码后释放原始字节。
+ */
+public class LazyKmlFolder extends KmlFolder {
+
+    private static final byte[] PLACEMARK_START = "<Placemark".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] PLACEMARK_END = "</Placemark>".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] FRAGMENT_PREFIX = "<kml><Document><Folder>".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] FRAGMENT_SUFFIX = "</Folder></Document></kml>".getBytes(StandardCharsets.US_ASCII);
+
+    private final int placemarkCount;
+
+    private final int contentLength;
+
+    private byte[] content;
+
+    private int start;
+
+    private int end;
+
+    private volatile boolean loaded;
+
+    private LazyKmlFolder(byte[] content, int placemarkCount) {
+        this.content = content;
+        this.contentLength = content.length;
+        this.placemarkCount = placemarkCount;
+        this.start = indexOf(content, PLACEMARK_START);
+        this.end = start < 0 ? -1 : lastIndexOf(content, PLACEMARK_END);
+    }
+
+    /**
+     * 解析 KML/WPML 文件，航点延迟解码
+     *
+     * @param content 完整的文件内容
+     * @return KmlInfo，其中 Folder 为 LazyKmlFolder
+     * @throws XMLStreamException XML 格式错误
+     */
+    public static KmlInfo parse(byte[] content) throws XMLStreamException {
+        int[] placemarkCount = new int[1];
+        KmlInfo kmlInfo = KmlStreamReader.read(new ByteArrayInputStream(content), null, new KmlPlacemarkVisitor() {
+            @Override
+            public void onPlacemark(String fileType, KmlPlacemark placemark) {
+            }
+
+            @Override
+            public boolean decodePlacemarks(String fileType) {
+                return false;
+            }
+
+            @Override
+            public void onPlacemarkSkipped(String fileType) {
+                placemarkCount[0]++;
+            }
+        });
+        KmlFolder folder = kmlInfo.getDocument() != null ? kmlInfo.getDocument().getFolder() : null;
+        if (folder != null) {
+            LazyKmlFolder lazyFolder = new LazyKmlFolder(content, placemarkCount[0]);
+            BeanUtils.copyProperties(folder, lazyFolder, "placemarkList");
+            if (placemarkCount[0] == 0) {
+                lazyFolder.setPlacemarkList(null);
+            }
+            kmlInfo.getDocument().setFolder(lazyFolder);
+        }
+        return kmlInfo;
+    }
+
+    /**
+     * 航点数量，无需解码
+     */
+    @JsonIgnore
+    public int getPlacemarkCount() {
+        return placemarkCount;
+    }
+
+    /**
+     * 原始文件字节数，航点未解码时保留这些字节；解码后释放，但仍返回原值
+     */
+    @JsonIgnore
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * 航点是否已解码
+     */
+    @JsonIgnore
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override
+    public List<KmlPlacemark> getPlacemarkList() {
+        if (!loaded) {
+            load();
+        }
+        return super.getPlacemarkList();
+    }
+
+    @Override
+    public void setPlacemarkList(List<KmlPlacemark> placemarkList) {
+        synchronized (this) {
+            super.setPlacemarkList(placemarkList);
+            content = null;
+            loaded = true;
+        }
+    }
+
+    private synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        List<KmlPlacemark> placemarkList = decodeRange();
+        // 区间内混有注释、文件不是 UTF-8 编码等导致解码失败或数量不符时，退回完整解析
+        if (placemarkList == null || placemarkList.size() != placemarkCount) {
+            try {
+                placemarkList = KmlStreamReader.read(new ByteArrayInputStream(content)).getDocument().getFolder().getPlacemarkList();
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("航点解析失败", e);
+            }
+        }
+        setPlacemarkList(placemarkList);
+    }
+
+    /**
+     * 只解码 Placemark 所在的字节区间：包装为最小的 kml 文档后复用流式解析
+     */
+    private List<KmlPlacemark> decodeRange() {
+        if (start < 0 || end <= start) {
+            return null;
+        }
+        InputStream fragment = new SequenceInputStream(new SequenceInputStream(
+                new ByteArrayInputStream(FRAGMENT_PREFIX),
+                new ByteArrayInputStream(content, start, end - start)),
+                new ByteArrayInputStream(FRAGMENT_SUFFIX));
+        try {
+            return KmlStreamReader.read(fragment).getDocument().getFolder().getPlacemarkList();
+        } catch (XMLStreamException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 查找标签起始位置；UTF-8 多字节序列不含 ASCII 字节，可直接按字节匹配
+     */
+    private static int indexOf(byte[] content, byte[] tag) {
+        outer:
+        for (int i = 0; i <= content.length - tag.length; i++) {
+            for (int j = 0; j < tag.length; j++) {
+                if (content[i + j] != tag[j]) {
+                    continue outer;
+                }
+            }
+            int next = i + tag.length;
+            if (next < content.length && (content[next] == '>' || content[next] == '/' || Character.isWhitespace(content[next]))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] content, byte[] tag) {
+        outer:
+        for (int i = content.length - tag.length; i >= 0; i--) {
+            for (int j = 0; j < tag.length; j++) {
+                if (content[i + j] != tag[j]) {
+                    continue outer;
+                }
+            }
+            return i + tag.length;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,95 @@
+package com.cleaner.djuav.util.kml;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 统计经过的 Placemark 开始标签个数的输入流
+ *
+ * 在字节层面匹配 "&lt;Placemark"，不做 XML 解析，可在 XML 解析提前停止后继续读完剩余内容得到航点数量；
+ * 与 {@link LazyKmlFolder} 相同，UTF-8 多字节序列不含 ASCII 字节，可直接按字节匹配。
+ */
+public class PlacemarkCountingInputStream extends FilterInputStream {
+
+    private static final byte[] PLACEMARK_START = "<Placemark".getBytes(StandardCharsets.US_ASCII);
+
+    private int matched;
+
+    private int count;
+
+    public PlacemarkCountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            accept((byte) b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        for (int i = 0; i < n; i++) {
+            accept(b[off + i]);
+        }
+        return n;
+    }
+
+    /**
+     * 跳过的内容同样需要统计
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void accept(byte b) {
+        if (matched == PLACEMARK_START.length) {
+            if (b == '>' || b == '/' || Character.isWhitespace(b)) {
+                count++;
+            }
+            matched = 0;
+        }
+        if (b == PLACEMARK_START[matched]) {
+            matched++;
+        } else {
+            matched = b == '<' ? 1 : 0;
+        }
+    }
+
+    /**
+     * 读完剩余内容，返回全部 Placemark 个数
+     */
+    public int countToEnd() throws IOException {
+        transferTo(OutputStream.nullOutputStream());
+        return count;
+    }
+
+    /**
+     * 目前为止读取的内容中的 Placemark 个数
+     */
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,49 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.kml.KmlParams;
+import com.cleaner.djuav.domain.kml.KmlPlacemark;
+import com.cleaner.djuav.domain.kml.RouteColumns;
+import com.cleaner.djuav.util.RouteFileUtils;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * 由列式航点按需生成的只读航点列表
+ *
+ * 不保存 KmlPlacemark 对象，每次 get 时由 {@link RouteColumns} 即时构建；
+ * 配合 {@link KmlStreamWriter} 写出时同一时刻只存在一个航点对象，堆内存只与列数据有关。
+ */
+public class RoutePlacemarkList extends AbstractList<KmlPlacemark> implements RandomAccess {
+
+    private final RouteColumns routeColumns;
+
+    private final KmlParams kmlParams;
+
+    private final String fileType;
+
+    private final boolean markStartAndEnd;
+
+    /**
+     * @param routeColumns    列式航点
+     * @param kmlParams       航线参数对象
+     * @param fileType        文件类型 (KML 或 WPML)
+     * @param markStartAndEnd 是否按编号标记首尾航点
+     */
+    public RoutePlacemarkList(RouteColumns routeColumns, KmlParams kmlParams, String fileType, boolean markStartAndEnd) {
+        this.routeColumns = routeColumns;
+        this.kmlParams = kmlParams;
+        this.fileType = fileType;
+        this.markStartAndEnd = markStartAndEnd;
+    }
+
+    @Override
+    public KmlPlacemark get(int index) {
+        return RouteFileUtils.buildKmlPlacemark(routeColumns, index, kmlParams, fileType, markStartAndEnd);
+    }
+
+    @Override
+    public int size() {
+        return routeColumns.size();
+    }
+}
@@ -0,0 +1,161 @@
+package com.cleaner.djuav.util.kml;
+
+import java.util.Arrays;
+
+/**
+ * 航点编辑计划
+ *
+ * 记录编辑后每个位置上的航点来自原文件的第几个航点，还是新增的第几个航点；
+ * 插入、删除、移动只调整这个整数序列，不涉及航点内容，由 {@link KmlStreamPatcher} 按序列输出。
+ */
+public final class WaypointEditPlan {
+
+    private final int originalCount;
+
+    /**
+     * 原航点为其序号（从 0 开始），新增航点为 -(新增序号 + 1)
+     */
+    private int[] items;
+
+    private int size;
+
+    private int addedCount;
+
+    /**
+     * @param originalCount 原文件中的航点数量
+     */
+    public WaypointEditPlan(int originalCount) {
+        this.originalCount = originalCount;
+        this.items = new int[Math.max(originalCount, 8)];
+        for (int i = 0; i < originalCount; i++) {
+            items[i] = i;
+        }
+        this.size = originalCount;
+    }
+
+    /**
+     * 在指定位置插入新航点
+     *
+     * @param index 插入位置，等于 size 时追加到末尾
+     * @param count 插入数量
+     * @return 第一个新航点的新增序号，其余依次递增
+     */
+    public int insert(int index, int count) {
+        checkIndex(index, size + 1);
+        if (size + count > items.length) {
+            items = Arrays.copyOf(items, Math.max(size + count, items.length + (items.length >> 1)));
+        }
+        System.arraycopy(items, index, items, index + count, size - index);
+        int first = addedCount;
+        for (int i = 0; i < count; i++) {
+            items[index + i] = -(addedCount++ + 1);
+        }
+        size += count;
+        return first;
+    }
+
+    /**
+     * 删除航点
+     *
+     * @param from 起始位置
+     * @param to   结束位置（包含）
+     */
+    public void delete(int from, int to) {
+        checkIndex(from, size);
+        checkIndex(to, size);
+        if (to < from) {
+            throw new IllegalArgumentException("删除范围错误: " + from + "~" + to);
+        }
+        System.arraycopy(items, to + 1, items, from, size - to - 1);
+        size -= to - from + 1;
+    }
+
+    /**
+     * 移动航点
+     *
+     * @param from 原位置
+     * @param to   移动后的位置
+     */
+    public void move(int from, int to) {
+        checkIndex(from, size);
+        checkIndex(to, size);
+        int item = items[from];
+        if (from < to) {
+            System.arraycopy(items, from + 1, items, from, to - from);
+        } else {
+            System.arraycopy(items, to, items, to + 1, from - to);
+        }
+        items[to] = item;
+    }
+
+    /**
+     * 用新航点替换指定位置的航点
+     *
+     * @param index 位置
+     * @return 新航点的新增序号
+     */
+    public int replace(int index) {
+        checkIndex(index, size);
+        items[index] = -(addedCount + 1);
+        return addedCount++;
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IllegalArgumentException("航点位置超出范围: " + index + "，应为 0~" + (bound - 1));
+        }
+    }
+
+    /**
+     * 编辑后的航点数量
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getOriginalCount() {
+        return originalCount;
+    }
+
+    /**
+     * 新增航点数量（含替换）
+     */
+    public int getAddedCount() {
+        return addedCount;
+    }
+
+    /**
+     * 编辑后位置上的航点是否来自原文件
+     */
+    public boolean isOriginal(int position) {
+        return items[position] >= 0;
+    }
+
+    /**
+     * 编辑后位置上的航点在原文件中的序号
+     */
+    public int originalOrdinal(int position) {
+        return items[position];
+    }
+
+    /**
+     * 编辑后位置上的航点的新增序号
+     */
+    public int addedOrdinal(int position) {
+        return -items[position] - 1;
+    }
+
+    /**
+     * 原航点编辑后的位置，已删除的为 -1
+     */
+    public int[] newPositions() {
+        int[] positions = new int[originalCount];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < size; i++) {
+            if (items[i] >= 0) {
+                positions[items[i]] = i;
+            }
+        }
+        return positions;
+    }
+}
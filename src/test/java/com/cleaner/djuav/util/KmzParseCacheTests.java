@@ -0,0 +1,212 @@
+package com.cleaner.djuav.util;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.cleaner.djuav.domain.KmzInfoVO;
+import com.cleaner.djuav.domain.KmzParseCacheEntryVO;
+import com.cleaner.djuav.domain.KmzParseCacheStatsVO;
+import com.cleaner.djuav.domain.UavRouteReq;
+import com.cleaner.djuav.domain.kml.KmlParams;
+import com.cleaner.djuav.domain.kml.RoutePointInfo;
+import com.cleaner.djuav.util.kml.KmzParseScope;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpHeaders;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KmzParseCacheTests {
+
+    @Test
+    void evictLeastRecentlyUsedByWeight() throws Exception {
+        KmzParseCache cache = new KmzParseCache(DataSize.ofKilobytes(100), null, 0, DataSize.ofMegabytes(10), "stax");
+        KmzInfoVO a = cache.get("a", () -> kmzInfo(40));
+        cache.get("b", () -> kmzInfo(40));
+        // 访问 a 后 b 成为最久未访问的条目
+        assertSame(a, cache.get("a", () -> fail("应命中缓存")));
+        cache.get("c", () -> kmzInfo(40));
+        assertEquals(List.of("a", "c"), cache.getEntries().stream().map(KmzParseCacheEntryVO::getKey).toList());
+
+        // 超过上限的结果不缓存，失败的结果不缓存
+        cache.get("d", () -> kmzInfo(101));
+        assertThrows(IOException.class, () -> cache.get("e", () -> {
+            throw new IOException("解析失败");
+        }));
+        cache.get(null, () -> kmzInfo(1));
+
+        KmzParseCacheStatsVO stats = cache.getStats();
+        assertEquals(80 * 1024, stats.getWeight());
+        assertEquals(2, stats.getSize());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(5, stats.getMissCount());
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(1, stats.getUncacheableCount());
+        assertEquals(1.0 / 6, stats.getHitRate(), 1e-9);
+
+        assertTrue(cache.invalidate("a"));
+        assertFalse(cache.invalidate("a"));
+        assertEquals(1, cache.invalidateAll());
+        assertEquals(0, cache.getStats().getWeight());
+    }
+
+    @Test
+    void weighByRetainedBytes() throws Exception {
+        byte[] kmz = buildKmz();
+        long contentLength = 0;
+        try (ZipArchiveInputStream zipInputStream = new ZipArchiveInputStream(new ByteArrayInputStream(kmz))) {
+            while (zipInputStream.getNextEntry() != null) {
+                contentLength += zipInputStream.readAllBytes().length;
+            }
+        }
+        // 航点未解码时保留 kml、wpml 的原始字节
+        KmzInfoVO parsed = RouteFileUtils.parseKmz(new ByteArrayInputStream(kmz), KmzParseScope.FULL);
+        assertEquals(contentLength, KmzParseCache.weigh(parsed));
+    }
+
+    @Test
+    void keyByUrlAndValidator() {
+        String url = "http://oss/route.kmz";
+        assertNull(KmzParseCache.urlKey(url, KmzParseScope.FULL, headers(Map.of())));
+        String etag = KmzParseCache.urlKey(url, KmzParseScope.FULL, headers(Map.of("ETag", "\"1\"", "Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT")));
+        assertNotEquals(etag, KmzParseCache.urlKey(url, KmzParseScope.FULL, headers(Map.of("ETag", "\"2\""))));
+        assertNotEquals(etag, KmzParseCache.urlKey(url, KmzParseScope.WPML, headers(Map.of("ETag", "\"1\""))));
+        assertNotNull(KmzParseCache.urlKey(url, KmzParseScope.FULL, headers(Map.of("Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT"))));
+    }
+
+    @Test
+    void revalidateWithConditionalRequest(@TempDir Path dir) throws Exception {
+        byte[] kmz = buildKmz();
+        AtomicReference<String> etag = new AtomicReference<>("\"v1\"");
+        List<Integer> statusCodes = new ArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/route.kmz", exchange -> {
+            exchange.getResponseHeaders().set("ETag", etag.get());
+            if (etag.get().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                statusCodes.add(304);
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                statusCodes.add(200);
+                exchange.sendResponseHeaders(200, kmz.length);
+                exchange.getResponseBody().write(kmz);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/route.kmz";
+            RemoteFileClient remoteFileClient = new RemoteFileClient(Duration.ofSeconds(5), Duration.ofSeconds(5), DataSize.ofMegabytes(10));
+            KmzInfoVO parsed = new KmzParseCache(DataSize.ofMegabytes(10), dir.toString(), 10, DataSize.ofMegabytes(10), "stax").parseKmz(remoteFileClient, url, KmzParseScope.FULL);
+
+            // 重启后内存为空：条件请求返回 304，使用磁盘上的解析结果
+            KmzParseCache cache = new KmzParseCache(DataSize.ofMegabytes(10), dir.toString(), 10, DataSize.ofMegabytes(10), "stax");
+            assertEquals(parsed, cache.parseKmz(remoteFileClient, url, KmzParseScope.FULL));
+            assertEquals(parsed, cache.parseKmz(remoteFileClient, url, KmzParseScope.FULL));
+            assertEquals(List.of(200, 304, 304), statusCodes);
+            assertEquals(2, cache.getStats().getNotModifiedCount());
+            assertEquals(1, cache.getStats().getDiskHitCount());
+            assertEquals(1, cache.getStats().getHitCount());
+
+            // 文件变化后重新下载
+            etag.set("\"v2\"");
+            assertEquals(parsed, cache.parseKmz(remoteFileClient, url, KmzParseScope.FULL));
+            assertEquals(200, statusCodes.get(3));
+
+            // 删除后不再发送条件请求
+            assertTrue(cache.invalidate(cache.getEntries().get(1).getKey()));
+            cache.parseKmz(remoteFileClient, url, KmzParseScope.FULL);
+            assertEquals(200, statusCodes.get(4));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void limitDiskEntries(@TempDir Path dir) throws Exception {
+        byte[] kmz = buildKmz();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            exchange.sendResponseHeaders(200, kmz.length);
+            exchange.getResponseBody().write(kmz);
+            exchange.close();
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+            RemoteFileClient remoteFileClient = new RemoteFileClient(Duration.ofSeconds(5), Duration.ofSeconds(5), DataSize.ofMegabytes(10));
+
+            // 不缓存时不写磁盘
+            new KmzParseCache(DataSize.ofBytes(0), dir.toString(), 10, DataSize.ofMegabytes(10), "stax").parseKmz(remoteFileClient, url + "a.kmz", KmzParseScope.FULL);
+            assertEquals(0, countDiskFiles(dir));
+
+            // 单个文件超过总大小上限时不保存，不影响解析结果
+            KmzParseCache small = new KmzParseCache(DataSize.ofMegabytes(10), dir.toString(), 10, DataSize.ofBytes(kmz.length / 2), "stax");
+            assertEquals(small.parseKmz(remoteFileClient, url + "a.kmz", KmzParseScope.FULL).getWaypointCount(),
+                    RouteFileUtils.parseKmz(new ByteArrayInputStream(kmz), KmzParseScope.FULL).getWaypointCount());
+            assertEquals(0, countDiskFiles(dir));
+
+            // 超过数量上限时删除最久未使用的文件
+            KmzParseCache cache = new KmzParseCache(DataSize.ofMegabytes(10), dir.toString(), 2, DataSize.ofMegabytes(10), "stax");
+            cache.parseKmz(remoteFileClient, url + "a.kmz", KmzParseScope.FULL);
+            cache.parseKmz(remoteFileClient, url + "b.kmz", KmzParseScope.FULL);
+            cache.parseKmz(remoteFileClient, url + "c.kmz", KmzParseScope.FULL);
+            assertEquals(2, countDiskFiles(dir));
+
+            // 重启后按已有文件建立索引，删除时不扫描目录
+            KmzParseCache restarted = new KmzParseCache(DataSize.ofMegabytes(10), dir.toString(), 2, DataSize.ofMegabytes(10), "stax");
+            assertTrue(restarted.invalidate(cache.getEntries().get(2).getKey()));
+            assertEquals(1, countDiskFiles(dir));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static long countDiskFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".cache")).count();
+        }
+    }
+
+    private static byte[] buildKmz() throws Exception {
+        KmlParams kmlParams = new KmlParams();
+        try (InputStream inputStream = KmzParseCacheTests.class.getResourceAsStream("/route/waypoint.json")) {
+            UavRouteReq uavRouteReq = new ObjectMapper().readValue(inputStream, UavRouteReq.class);
+            BeanUtils.copyProperties(uavRouteReq, kmlParams);
+            kmlParams.setRoutePointList(BeanUtil.copyToList(uavRouteReq.getRoutePointList(), RoutePointInfo.class));
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        RouteFileUtils.writeKmz(outputStream, RouteFileUtils.buildKml(kmlParams), RouteFileUtils.buildWpml(kmlParams));
+        return outputStream.toByteArray();
+    }
+
+    private static KmzInfoVO kmzInfo(int waypointCount) {
+        KmzInfoVO kmzInfoVO = new KmzInfoVO();
+        kmzInfoVO.setWaypointCount(waypointCount);
+        return kmzInfoVO;
+    }
+
+    private static HttpHeaders headers(Map<String, String> values) {
+        return HttpHeaders.of(values.entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, entry -> List.of(entry.getValue()))),
+                (name, value) -> true);
+    }
+}
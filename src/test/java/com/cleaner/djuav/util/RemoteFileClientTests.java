@@ -0,0 +1,46 @@
+package com.cleaner.djuav.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RemoteFileClientTests {
+
+    @Test
+    void timeoutWhenBodyStalls() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/route.kmz", exchange -> {
+            // 发送一部分内容后不再发送
+            exchange.sendResponseHeaders(200, 1024);
+            OutputStream body = exchange.getResponseBody();
+            body.write(new byte[100]);
+            body.flush();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            exchange.close();
+        });
+        server.start();
+        RemoteFileClient remoteFileClient = new RemoteFileClient(Duration.ofSeconds(1), Duration.ofMillis(300), DataSize.ofMegabytes(1));
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/route.kmz";
+            long start = System.nanoTime();
+            assertThrows(HttpTimeoutException.class, () -> remoteFileClient.read(url, inputStream -> inputStream.readAllBytes()));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.cleaner.djuav.util;
+
+import com.cleaner.djuav.domain.ScratchUsageVO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScratchFileManagerTests {
+
+    @Test
+    void deleteOnCloseAndWaitForQuota(@TempDir Path dir) throws Exception {
+        // 已退出的实例遗留的子目录（锁已释放）
+        Path leftover = Files.createDirectories(dir.resolve("instance-1-dead"));
+        Files.writeString(leftover.resolve(".lock"), "");
+        Files.writeString(leftover.resolve("scratch-leftover.kmz"), "leftover");
+        ScratchFileManager manager = new ScratchFileManager(dir.toString(), DataSize.ofMegabytes(2), Duration.ofSeconds(5));
+        assertFalse(Files.exists(leftover));
+
+        ScratchFile first = manager.create(".kmz").write(new ByteArrayInputStream(new byte[1536 * 1024]));
+        File file = first.getFile();
+        assertEquals(1536 * 1024, file.length());
+        assertEquals(2L * 1024 * 1024, manager.getUsage().getReservedBytes());
+
+        // 配额已用完，第二个文件等待第一个文件删除
+        CompletableFuture<ScratchFile> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                ScratchFile scratchFile = manager.create(".kmz");
+                scratchFile.reserve(1024 * 1024);
+                return scratchFile;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(second.isDone());
+        first.close();
+        first.close();
+        assertFalse(file.exists());
+        second.get(5, TimeUnit.SECONDS).close();
+
+        ScratchUsageVO usage = manager.getUsage();
+        assertEquals(0, usage.getReservedBytes());
+        assertEquals(0, usage.getActiveFiles());
+        assertEquals(2, usage.getCreatedFiles());
+        assertEquals(1, usage.getWaitCount());
+
+        // 超过配额直接拒绝
+        try (ScratchFile scratchFile = manager.create(".kmz")) {
+            assertThrows(IOException.class, () -> scratchFile.reserve(DataSize.ofMegabytes(3).toBytes()));
+        }
+        assertEquals(1, manager.getUsage().getRejectedCount());
+
+        // 同一目录下的另一个实例不删除正在运行的实例的文件
+        try (ScratchFile inUse = manager.create(".kmz")) {
+            ScratchFileManager other = new ScratchFileManager(dir.toString(), DataSize.ofMegabytes(2), Duration.ofSeconds(5));
+            assertTrue(inUse.getFile().exists());
+            assertNotEquals(manager.getUsage().getDirectory(), other.getUsage().getDirectory());
+            other.close();
+        }
+        manager.close();
+        assertFalse(Files.exists(Path.of(manager.getUsage().getDirectory())));
+    }
+}
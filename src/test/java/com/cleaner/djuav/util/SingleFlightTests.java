@@ -0,0 +1,86 @@
+package com.cleaner.djuav.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTests {
+
+    @Test
+    void shareResultAndFailure() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AtomicInteger calls = new AtomicInteger();
+            CountDownLatch release = new CountDownLatch(1);
+            List<Future<String>> futures = submitAll(executor, 4, () -> singleFlight.execute("route", () -> {
+                calls.incrementAndGet();
+                await(release);
+                return "parsed";
+            }));
+            waitForWaiters(singleFlight, 3);
+            release.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("parsed", future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, calls.get());
+            assertEquals(0, singleFlight.getInFlightCount());
+
+            // 失败时所有等待方得到同一个异常，结束后不保留
+            CountDownLatch fail = new CountDownLatch(1);
+            futures = submitAll(executor, 4, () -> singleFlight.execute("route", () -> {
+                await(fail);
+                throw new IOException("下载失败");
+            }));
+            waitForWaiters(singleFlight, 6);
+            fail.countDown();
+            for (Future<String> future : futures) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+                assertEquals("下载失败", e.getCause().getMessage());
+            }
+            assertEquals(0, singleFlight.getInFlightCount());
+            assertEquals("again", singleFlight.execute("route", () -> "again"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Future<String>> submitAll(ExecutorService executor, int count, Callable<String> task) {
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(executor.submit(task));
+        }
+        return futures;
+    }
+
+    /**
+     * 等待其他线程都进入等待状态
+     */
+    private static void waitForWaiters(SingleFlight<?, ?> singleFlight, long sharedCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (singleFlight.getSharedCount() < sharedCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(sharedCount, singleFlight.getSharedCount());
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.cleaner.djuav.util.kml;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KmlNumberFormatTests {
+
+    @Test
+    void fixedPrecisionTrimsTrailingZeros() {
+        StringBuilder buffer = new StringBuilder();
+        double[] values = {113.94028200000001, 22.5, 20, -0.000000004, -0.00001234, 0.05, 1e20, Double.NaN};
+        String[] expected = {"113.940282", "22.5", "20.0", "0.0", "-0.00001234", "0.05", "1.0E20", "NaN"};
+        for (int i = 0; i < values.length; i++) {
+            buffer.setLength(0);
+            KmlNumberFormat.append(buffer, values[i], 8);
+            assertEquals(expected[i], buffer.toString());
+        }
+        buffer.setLength(0);
+        KmlNumberFormat.append(buffer, 7.25, 1);
+        assertEquals("7.3", buffer.toString());
+        buffer.setLength(0);
+        KmlNumberFormat.append(buffer, 0.1 + 0.2, -1);
+        assertEquals(String.valueOf(0.1 + 0.2), buffer.toString());
+    }
+
+    @Test
+    void formatByField() {
+        assertNull(KmlNumberFormat.DEFAULT.format((Double) null, KmlNumberFormat.Field.SPEED));
+        assertEquals("10.0", KmlNumberFormat.DEFAULT.format(10.04, KmlNumberFormat.Field.SPEED));
+        assertEquals("113.94028,22.58", KmlNumberFormat.DEFAULT.formatCoordinates(113.94028000000001, 22.58));
+
+        // 修改精度返回新的实例，默认实例不变
+        KmlNumberFormat numberFormat = KmlNumberFormat.DEFAULT.withPrecision(KmlNumberFormat.Field.SPEED, 2);
+        assertEquals("10.04", numberFormat.format(10.04, KmlNumberFormat.Field.SPEED));
+        assertEquals("10.0", KmlNumberFormat.DEFAULT.format(10.04, KmlNumberFormat.Field.SPEED));
+    }
+}
@@ -0,0 +1,213 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.kml.KmlActionGroup;
+import com.cleaner.djuav.domain.kml.KmlInfo;
+import com.cleaner.djuav.domain.kml.KmlMissionConfig;
+import com.cleaner.djuav.domain.kml.KmlParams;
+import com.cleaner.djuav.domain.kml.KmlPlacemark;
+import com.cleaner.djuav.util.RouteFileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KmlStreamPatcherTests {
+
+    @Test
+    void patchSameBytesAsRewriting() throws Exception {
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        for (boolean compact : new boolean[]{false, true}) {
+            KmlInfo wpmlInfo = RouteFileUtils.buildWpml(kmlParams);
+            byte[] original = write(wpmlInfo, compact);
+
+            // 替换已有字段和全部航点（倒序，去掉一个）
+            List<KmlPlacemark> placemarkList = new ArrayList<>(wpmlInfo.getDocument().getFolder().getPlacemarkList());
+            placemarkList.remove(0);
+            Collections.reverse(placemarkList);
+            KmlPatch patch = new KmlPatch()
+                    .setMissionConfig("finishAction", "autoLand")
+                    .setPlacemarkList(placemarkList);
+            wpmlInfo.getDocument().getKmlMissionConfig().setFinishAction("autoLand");
+            wpmlInfo.getDocument().getFolder().setPlacemarkList(placemarkList);
+            assertEquals(new String(write(wpmlInfo, compact), StandardCharsets.UTF_8),
+                    new String(patch(original, patch), StandardCharsets.UTF_8), "compact=" + compact);
+
+            // 没有的字段追加到 missionConfig 末尾，没有航点时写到 Folder 末尾
+            wpmlInfo.getDocument().getFolder().setPlacemarkList(null);
+            KmlMissionConfig missionConfig = wpmlInfo.getDocument().getKmlMissionConfig();
+            missionConfig.setExecuteRCLostAction(null);
+            original = write(wpmlInfo, compact);
+            patch = new KmlPatch()
+                    .setMissionConfig("executeRCLostAction", "hover")
+                    .setPlacemarkList(placemarkList);
+            KmlInfo patched = KmlStreamReader.read(new ByteArrayInputStream(patch(original, patch)));
+            missionConfig.setExecuteRCLostAction("hover");
+            wpmlInfo.getDocument().getFolder().setPlacemarkList(placemarkList);
+            assertEquals(wpmlInfo, patched, "compact=" + compact);
+        }
+    }
+
+    @Test
+    void editWaypointsSameBytesAsRewriting() throws Exception {
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        for (boolean compact : new boolean[]{false, true}) {
+            KmlInfo wpmlInfo = RouteFileUtils.buildWpml(kmlParams);
+            List<KmlPlacemark> originalList = wpmlInfo.getDocument().getFolder().getPlacemarkList();
+            byte[] original = write(wpmlInfo, compact);
+            // 新增航点沿用原航点的内容，编号不同
+            List<KmlPlacemark> addedList = RouteFileUtils.buildWpml(kmlParams).getDocument().getFolder().getPlacemarkList();
+
+            WaypointEditPlan plan = new WaypointEditPlan(originalList.size());
+            plan.insert(1, 2);
+            plan.delete(3, 4);
+            plan.move(0, plan.size() - 1);
+            plan.replace(2);
+            KmlPatch patch = new KmlPatch().setWaypointEdit(plan, addedList);
+
+            int[] newPositions = plan.newPositions();
+            List<KmlPlacemark> expectedList = new ArrayList<>();
+            for (int position = 0; position < plan.size(); position++) {
+                KmlPlacemark placemark = plan.isOriginal(position) ? originalList.get(plan.originalOrdinal(position)) : addedList.get(plan.addedOrdinal(position));
+                int oldIndex = Integer.parseInt(placemark.getIndex());
+                for (KmlActionGroup actionGroup : placemark.getActionGroup() == null ? List.<KmlActionGroup>of() : placemark.getActionGroup()) {
+                    actionGroup.setActionGroupStartIndex(renumber(actionGroup.getActionGroupStartIndex(), oldIndex, position, plan.isOriginal(position) ? newPositions : null));
+                    actionGroup.setActionGroupEndIndex(renumber(actionGroup.getActionGroupEndIndex(), oldIndex, position, plan.isOriginal(position) ? newPositions : null));
+                }
+                placemark.setIndex(String.valueOf(position));
+                expectedList.add(placemark);
+            }
+            wpmlInfo.getDocument().getFolder().setPlacemarkList(expectedList);
+            assertEquals(new String(write(wpmlInfo, compact), StandardCharsets.UTF_8),
+                    new String(patch(original, patch), StandardCharsets.UTF_8), "compact=" + compact);
+
+            // 编辑计划与文件中的航点数量不符
+            KmlPatch mismatched = new KmlPatch().setWaypointEdit(new WaypointEditPlan(originalList.size() + 1), List.of());
+            assertThrows(IOException.class, () -> patch(original, mismatched));
+        }
+    }
+
+    private static String renumber(String value, int oldIndex, int newIndex, int[] newPositions) {
+        int index = Integer.parseInt(value);
+        if (index == oldIndex) {
+            return String.valueOf(newIndex);
+        }
+        int mapped = newPositions == null ? index : index < newPositions.length ? newPositions[index] : -1;
+        return String.valueOf(mapped < 0 ? newIndex : mapped);
+    }
+
+    @Test
+    void clampActionGroupRanges() throws Exception {
+        // 航点 0 的动作组覆盖 1~3，航点 2 的动作组覆盖 2~5
+        String[] groups = {"1~3", null, "2~5", null, null, null};
+
+        // 删除航点 5：2~5 收缩为 2~4
+        WaypointEditPlan plan = new WaypointEditPlan(groups.length);
+        plan.delete(5, 5);
+        assertEquals(List.of("0:1~3", "1", "2:2~4", "3", "4"), editedGroups(groups, plan));
+
+        // 删除航点 1：1~3 的起点后移到原航点 2，即新位置 1~2；2~5 变为 1~4
+        plan = new WaypointEditPlan(groups.length);
+        plan.delete(1, 1);
+        assertEquals(List.of("0:1~2", "1:1~4", "2", "3", "4"), editedGroups(groups, plan));
+
+        // 删除航点 3~5：2~5 只剩航点 2
+        plan = new WaypointEditPlan(groups.length);
+        plan.delete(3, 5);
+        assertEquals(List.of("0:1~2", "1", "2:2~2"), editedGroups(groups, plan));
+
+        // 航点 3 移到最前：1~3 变为 2~0，交换为 0~2；2~5 变为 3~5
+        plan = new WaypointEditPlan(groups.length);
+        plan.move(3, 0);
+        assertEquals(List.of("0", "1:0~2", "2", "3:3~5", "4", "5"), editedGroups(groups, plan));
+    }
+
+    /**
+     * 按编辑计划修改只含编号和动作组的航点
+     *
+     * @param groups 每个航点的动作组范围，没有动作组时为 null
+     * @return 编辑后每个航点的 "wpml:index:起点~终点"
+     */
+    private static List<String> editedGroups(String[] groups, WaypointEditPlan plan) throws IOException {
+        StringBuilder xml = new StringBuilder("<kml><Document><Folder>");
+        for (int i = 0; i < groups.length; i++) {
+            xml.append("<Placemark><wpml:index>").append(i).append("</wpml:index>");
+            if (groups[i] != null) {
+                String[] range = groups[i].split("~");
+                xml.append("<wpml:actionGroup><wpml:actionGroupStartIndex>").append(range[0])
+                        .append("</wpml:actionGroupStartIndex><wpml:actionGroupEndIndex>").append(range[1])
+                        .append("</wpml:actionGroupEndIndex></wpml:actionGroup>");
+            }
+            xml.append("</Placemark>");
+        }
+        xml.append("</Folder></Document></kml>");
+        String patched = new String(patch(xml.toString().getBytes(StandardCharsets.UTF_8), new KmlPatch().setWaypointEdit(plan, List.of())), StandardCharsets.UTF_8);
+        List<String> result = new ArrayList<>();
+        for (String placemark : patched.split("<Placemark>")) {
+            if (!placemark.contains("<wpml:index>")) {
+                continue;
+            }
+            String edited = between(placemark, "<wpml:index>", "</wpml:index>");
+            if (placemark.contains("<wpml:actionGroupStartIndex>")) {
+                edited += ":" + between(placemark, "<wpml:actionGroupStartIndex>", "</wpml:actionGroupStartIndex>")
+                        + "~" + between(placemark, "<wpml:actionGroupEndIndex>", "</wpml:actionGroupEndIndex>");
+            }
+            result.add(edited);
+        }
+        return result;
+    }
+
+    private static String between(String text, String start, String end) {
+        int from = text.indexOf(start) + start.length();
+        return text.substring(from, text.indexOf(end, from));
+    }
+
+    @Test
+    void copyCommentsAndUnknownElements() throws Exception {
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <kml xmlns="http://www.opengis.net/kml/2.2" xmlns:wpml="http://www.dji.com/wpmz/1.0.6">
+                  <!-- <Placemark> in comment -->
+                  <Document>
+                    <wpml:missionConfig>
+                      <wpml:finishAction attr="a>b">goHome</wpml:finishAction>
+                      <wpml:unknown><![CDATA[<wpml:finishAction>]]></wpml:unknown>
+                    </wpml:missionConfig>
+                    <Folder>
+                      <Placemark><wpml:index>0</wpml:index></Placemark>
+                      <Placemark/>
+                      <wpml:after>1</wpml:after>
+                    </Folder>
+                  </Document>
+                </kml>
+                """;
+        KmlPlacemark placemark = new KmlPlacemark();
+        placemark.setIndex("5");
+        KmlPatch patch = new KmlPatch()
+                .setMissionConfig("finishAction", "a<b")
+                .setPlacemarkList(List.of(placemark));
+        String expected = xml
+                .replace("<wpml:finishAction attr=\"a>b\">goHome</wpml:finishAction>", "<wpml:finishAction>a&lt;b</wpml:finishAction>")
+                .replace("<Placemark><wpml:index>0</wpml:index></Placemark>\n      <Placemark/>", "<Placemark>\n        <wpml:index>5</wpml:index>\n      </Placemark>");
+        assertEquals(expected, new String(patch(xml.getBytes(StandardCharsets.UTF_8), patch), StandardCharsets.UTF_8));
+        assertArrayEquals(xml.getBytes(StandardCharsets.UTF_8), patch(xml.getBytes(StandardCharsets.UTF_8), new KmlPatch()));
+    }
+
+    private static byte[] write(KmlInfo kmlInfo, boolean compact) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        KmlStreamWriter.write(kmlInfo, outputStream, compact);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] patch(byte[] content, KmlPatch patch) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        KmlStreamPatcher.patch(new ByteArrayInputStream(content), outputStream, patch);
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,135 @@
+package com.cleaner.djuav.util.kml;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.cleaner.djuav.constant.FileTypeConstants;
+import com.cleaner.djuav.domain.UavRouteReq;
+import com.cleaner.djuav.domain.kml.*;
+import com.cleaner.djuav.util.RouteFileUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.DomDriver;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeanUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KmlStreamReaderTests {
+
+    @Test
+    void sameResultAsXStreamForGeneratedRoutes() throws Exception {
+        for (String route : new String[]{"waypoint", "mapping2d"}) {
+            KmlParams kmlParams = loadKmlParams(route);
+            for (KmlInfo kmlInfo : new KmlInfo[]{RouteFileUtils.buildKml(kmlParams), RouteFileUtils.buildWpml(kmlParams)}) {
+                byte[] content = toXml(kmlInfo);
+                KmlInfo expected = RouteFileUtils.parseKmlByXStream(new ByteArrayInputStream(content));
+                KmlInfo actual = KmlStreamReader.read(new ByteArrayInputStream(content));
+                assertEquals(expected, actual, route);
+                assertEquals(kmlInfo, actual, route);
+            }
+        }
+    }
+
+    @Test
+    void ignoreUnknownElementsAndKeepRawText() throws Exception {
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <kml xmlns="http://www.opengis.net/kml/2.2">
+                  <Document>
+                    <wpml:unknown><a>1</a></wpml:unknown>
+                    <Folder>
+                      <Placemark>
+                        <Point><coordinates>
+                          113.94,22.58
+                        </coordinates></Point>
+                        <wpml:index>0</wpml:index>
+                        <wpml:actionGroup><wpml:actionGroupId>1</wpml:actionGroupId></wpml:actionGroup>
+                        <wpml:actionGroup><wpml:action><wpml:actionId>2</wpml:actionId></wpml:action></wpml:actionGroup>
+                      </Placemark>
+                      <Placemark><wpml:index>1</wpml:index><wpml:useGlobalSpeed/></Placemark>
+                    </Folder>
+                  </Document>
+                </kml>
+                """;
+        byte[] content = xml.getBytes(StandardCharsets.UTF_8);
+        KmlInfo expected = RouteFileUtils.parseKmlByXStream(new ByteArrayInputStream(content));
+        KmlInfo actual = KmlStreamReader.read(new ByteArrayInputStream(content));
+        assertEquals(expected, actual);
+        assertNull(actual.getWpml());
+        assertEquals(2, actual.getDocument().getFolder().getPlacemarkList().get(0).getActionGroup().size());
+        assertEquals("", actual.getDocument().getFolder().getPlacemarkList().get(1).getUseGlobalSpeed());
+    }
+
+    @Test
+    void visitPlacemarksOneByOne() throws Exception {
+        KmlInfo wpmlInfo = RouteFileUtils.buildWpml(loadKmlParams("waypoint"));
+        List<String> events = new ArrayList<>();
+        KmlInfo result = KmlStreamReader.read(new ByteArrayInputStream(toXml(wpmlInfo)), FileTypeConstants.WPML, new KmlPlacemarkVisitor() {
+            @Override
+            public void onHeader(String fileType, KmlInfo header) {
+                assertNotNull(header.getDocument().getKmlMissionConfig());
+                assertNull(header.getDocument().getFolder().getPlacemarkList());
+                events.add("header");
+            }
+
+            @Override
+            public void onPlacemark(String fileType, KmlPlacemark placemark) {
+                events.add(placemark.getIndex());
+            }
+
+            @Override
+            public void onEnd(String fileType, KmlInfo kmlInfo) {
+                assertNotNull(kmlInfo.getDocument().getFolder().getStartActionGroup());
+                events.add("end");
+            }
+        });
+
+        List<KmlPlacemark> placemarkList = wpmlInfo.getDocument().getFolder().getPlacemarkList();
+        assertEquals(placemarkList.size() + 2, events.size());
+        assertEquals("header", events.get(0));
+        assertEquals(placemarkList.get(placemarkList.size() - 1).getIndex(), events.get(events.size() - 2));
+        assertEquals("end", events.get(events.size() - 1));
+        assertNull(result.getDocument().getFolder().getPlacemarkList());
+    }
+
+    @Test
+    void decodePlacemarksLazily() throws Exception {
+        for (String route : new String[]{"waypoint", "mapping2d"}) {
+            KmlInfo wpmlInfo = RouteFileUtils.buildWpml(loadKmlParams(route));
+            KmlInfo lazyInfo = LazyKmlFolder.parse(toXml(wpmlInfo));
+            LazyKmlFolder folder = (LazyKmlFolder) lazyInfo.getDocument().getFolder();
+
+            assertFalse(folder.isLoaded());
+            assertEquals(wpmlInfo.getDocument().getKmlMissionConfig(), lazyInfo.getDocument().getKmlMissionConfig());
+            assertEquals(wpmlInfo.getDocument().getFolder().getAutoFlightSpeed(), folder.getAutoFlightSpeed());
+            assertEquals(wpmlInfo.getDocument().getFolder().getPlacemarkList().size(), folder.getPlacemarkCount());
+            assertFalse(folder.isLoaded());
+
+            assertEquals(new ObjectMapper().writeValueAsString(wpmlInfo), new ObjectMapper().writeValueAsString(lazyInfo), route);
+            assertTrue(folder.isLoaded());
+        }
+    }
+
+    static KmlParams loadKmlParams(String route) throws Exception {
+        try (InputStream inputStream = KmlStreamReaderTests.class.getResourceAsStream("/route/" + route + ".json")) {
+            UavRouteReq uavRouteReq = new ObjectMapper().readValue(inputStream, UavRouteReq.class);
+            KmlParams kmlParams = new KmlParams();
+            BeanUtils.copyProperties(uavRouteReq, kmlParams);
+            kmlParams.setRoutePointList(BeanUtil.copyToList(uavRouteReq.getRoutePointList(), RoutePointInfo.class));
+            return kmlParams;
+        }
+    }
+
+    static byte[] toXml(KmlInfo kmlInfo) {
+        XStream xStream = new XStream(new DomDriver());
+        xStream.processAnnotations(KmlInfo.class);
+        xStream.addImplicitCollection(KmlActionGroup.class, "action");
+        xStream.addImplicitCollection(KmlPlacemark.class, "actionGroup");
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + xStream.toXML(kmlInfo)).getBytes(StandardCharsets.UTF_8);
+    }
+}
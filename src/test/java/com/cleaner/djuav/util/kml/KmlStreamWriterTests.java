@@ -0,0 +1,97 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.ScratchUsageVO;
+import com.cleaner.djuav.domain.kml.*;
+import com.cleaner.djuav.util.RouteFileUtils;
+import com.cleaner.djuav.util.ScratchFileManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KmlStreamWriterTests {
+
+    @Test
+    void sameBytesAsXStream() throws Exception {
+        for (String route : new String[]{"waypoint", "mapping2d"}) {
+            KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams(route);
+            for (KmlInfo kmlInfo : new KmlInfo[]{RouteFileUtils.buildKml(kmlParams), RouteFileUtils.buildWpml(kmlParams)}) {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                KmlStreamWriter.write(kmlInfo, outputStream, false);
+                assertEquals(new String(KmlStreamReaderTests.toXml(kmlInfo), StandardCharsets.UTF_8), outputStream.toString(StandardCharsets.UTF_8), route);
+            }
+        }
+    }
+
+    @Test
+    void writeKmzSequentiallyAndInParallel(@TempDir Path dir) throws Exception {
+        // 并行时 wpml 压缩数据写入临时文件
+        ScratchFileManager scratchFileManager = new ScratchFileManager(dir.toString(), DataSize.ofMegabytes(10), Duration.ofSeconds(1));
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        KmlInfo kmlInfo = RouteFileUtils.buildKml(kmlParams);
+        KmlInfo wpmlInfo = RouteFileUtils.buildWpml(kmlParams);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                fail("输出流不应被关闭");
+            }
+        };
+        for (String compression : new String[]{"store", "deflate:6", "auto:1KB:6", "auto:1MB"}) {
+            for (boolean parallel : new boolean[]{false, true}) {
+                outputStream.reset();
+                RouteFileUtils.writeKmz(outputStream, kmlInfo, wpmlInfo, KmzCompression.parse(compression), false, parallel ? scratchFileManager : null, null);
+
+                List<String> names = new ArrayList<>();
+                try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+                    ZipEntry entry;
+                    while ((entry = zipInputStream.getNextEntry()) != null) {
+                        names.add(entry.getName());
+                        KmlInfo expected = entry.getName().endsWith(".kml") ? kmlInfo : wpmlInfo;
+                        assertEquals(expected, KmlStreamReader.read(zipInputStream), compression);
+                    }
+                }
+                assertEquals(List.of("wpmz/template.kml", "wpmz/waylines.wpml"), names);
+            }
+        }
+        ScratchUsageVO usage = scratchFileManager.getUsage();
+        assertEquals(4, usage.getCreatedFiles());
+        assertEquals(0, usage.getActiveFiles());
+        assertEquals(0, usage.getReservedBytes());
+    }
+
+    @Test
+    void compressionPolicy() {
+        assertEquals(0, KmzCompression.parse(null).levelFor(Long.MAX_VALUE));
+        assertEquals(9, KmzCompression.parse("deflate:9").levelFor(0));
+        KmzCompression auto = KmzCompression.parse("AUTO:64KB:3");
+        assertEquals(0, auto.levelFor(64 * 1024));
+        assertEquals(3, auto.levelFor(64 * 1024 + 1));
+        assertThrows(IllegalArgumentException.class, () -> KmzCompression.parse("deflate:10"));
+        assertThrows(IllegalArgumentException.class, () -> KmzCompression.parse("zstd"));
+    }
+
+    @Test
+    void compactOutputRoundTrip() throws Exception {
+        KmlInfo wpmlInfo = RouteFileUtils.buildWpml(KmlStreamReaderTests.loadKmlParams("waypoint"));
+        wpmlInfo.getDocument().getKmlMissionConfig().setTakeOffRefPoint("<&\"'\r\t>");
+        ByteArrayOutputStream pretty = new ByteArrayOutputStream();
+        KmlStreamWriter.write(wpmlInfo, pretty, false);
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        KmlStreamWriter.write(wpmlInfo, compact, true);
+
+        assertTrue(compact.size() < pretty.size());
+        assertFalse(compact.toString(StandardCharsets.UTF_8).contains("\n  "));
+        assertEquals(wpmlInfo, KmlStreamReader.read(new ByteArrayInputStream(compact.toByteArray())));
+    }
+}
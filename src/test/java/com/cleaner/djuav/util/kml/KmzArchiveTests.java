@@ -0,0 +1,228 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.KmzBuildVO;
+import com.cleaner.djuav.domain.KmzInfoVO;
+import com.cleaner.djuav.domain.UavRouteReq;
+import com.cleaner.djuav.domain.kml.KmlInfo;
+import com.cleaner.djuav.domain.kml.KmlParams;
+import com.cleaner.djuav.util.RouteFileUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KmzArchiveTests {
+
+    @Test
+    void openEntriesByCentralDirectory(@TempDir Path dir) throws Exception {
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        KmlInfo kmlInfo = RouteFileUtils.buildKml(kmlParams);
+        KmlInfo wpmlInfo = RouteFileUtils.buildWpml(kmlParams);
+        File file = writeKmzWithResource(dir.resolve("route.kmz").toFile(), kmlInfo, wpmlInfo);
+
+        KmzInfoVO kmzInfoVO = RouteFileUtils.parseKmz(file);
+        assertEquals(kmlInfo, kmzInfoVO.getKmlInfo());
+        assertEquals(wpmlInfo, kmzInfoVO.getWpmlInfo());
+        int waypointCount = kmlParams.getRoutePointList().size();
+        assertEquals(waypointCount, kmzInfoVO.getWaypointCount());
+
+        KmzInfoVO wpmlOnly = RouteFileUtils.parseKmz(file, KmzParseScope.WPML);
+        assertNull(wpmlOnly.getKmlInfo());
+        assertEquals(wpmlInfo, wpmlOnly.getWpmlInfo());
+        assertEquals(waypointCount, wpmlOnly.getWaypointCount());
+
+        // 只解析文件头：Folder 全局参数齐全，航点未解码
+        KmzInfoVO missionConfig = RouteFileUtils.parseKmz(file, KmzParseScope.MISSION_CONFIG);
+        assertNull(missionConfig.getWpmlInfo());
+        assertEquals(waypointCount, missionConfig.getWaypointCount());
+        assertEquals(kmlInfo.getDocument().getKmlMissionConfig(), missionConfig.getKmlInfo().getDocument().getKmlMissionConfig());
+        assertEquals(kmlInfo.getDocument().getFolder().getTemplateType(), missionConfig.getKmlInfo().getDocument().getFolder().getTemplateType());
+        assertNull(missionConfig.getKmlInfo().getDocument().getFolder().getPlacemarkList());
+
+        try (KmzArchive kmzArchive = KmzArchive.open(file)) {
+            assertEquals(List.of("wpmz/res/ply/reference.ply"), kmzArchive.getResourceNames());
+            try (InputStream inputStream = kmzArchive.openResource("wpmz/res/ply/reference.ply")) {
+                assertEquals("ply ply ply ply ply ply", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            assertThrows(IOException.class, () -> kmzArchive.openResource("wpmz/template.kml"));
+        }
+    }
+
+    @Test
+    void parseStreamSameAsFile(@TempDir Path dir) throws Exception {
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        KmlInfo kmlInfo = RouteFileUtils.buildKml(kmlParams);
+        KmlInfo wpmlInfo = RouteFileUtils.buildWpml(kmlParams);
+        File file = writeKmzWithResource(dir.resolve("route.kmz").toFile(), kmlInfo, wpmlInfo);
+        for (KmzParseScope scope : KmzParseScope.values()) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                assertEquals(RouteFileUtils.parseKmz(file, scope), RouteFileUtils.parseKmz(inputStream, scope), scope.name());
+            }
+        }
+
+        // 输出流写出的 kmz，压缩条目的大小记录在数据描述符中
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        RouteFileUtils.writeKmz(outputStream, kmlInfo, wpmlInfo, KmzCompression.parse("deflate:1"), false, null, null);
+        KmzInfoVO kmzInfoVO = RouteFileUtils.parseKmz(new ByteArrayInputStream(outputStream.toByteArray()), KmzParseScope.FULL);
+        assertEquals(kmlInfo, kmzInfoVO.getKmlInfo());
+        assertEquals(wpmlInfo, kmzInfoVO.getWpmlInfo());
+        assertEquals(kmlParams.getRoutePointList().size(), kmzInfoVO.getWaypointCount());
+    }
+
+    @Test
+    void copyResourcesAsRawData(@TempDir Path dir) throws Exception {
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        KmlInfo kmlInfo = RouteFileUtils.buildKml(kmlParams);
+        KmlInfo wpmlInfo = RouteFileUtils.buildWpml(kmlParams);
+        File source = writeKmzWithResource(dir.resolve("source.kmz").toFile(), kmlInfo, wpmlInfo);
+        File target = dir.resolve("target.kmz").toFile();
+        kmlInfo.getDocument().getKmlMissionConfig().setFinishAction("noAction");
+        try (KmzArchive kmzArchive = KmzArchive.open(source); OutputStream outputStream = new FileOutputStream(target)) {
+            RouteFileUtils.writeKmz(outputStream, kmlInfo, wpmlInfo, KmzCompression.STORE, false, null, kmzArchive);
+        }
+
+        try (ZipFile sourceZip = ZipFile.builder().setFile(source).get(); ZipFile targetZip = ZipFile.builder().setFile(target).get()) {
+            ZipArchiveEntry expected = sourceZip.getEntry("wpmz/res/ply/reference.ply");
+            ZipArchiveEntry actual = targetZip.getEntry("wpmz/res/ply/reference.ply");
+            assertEquals(expected.getMethod(), actual.getMethod());
+            assertEquals(expected.getCrc(), actual.getCrc());
+            try (InputStream expectedRaw = sourceZip.getRawInputStream(expected); InputStream actualRaw = targetZip.getRawInputStream(actual)) {
+                assertArrayEquals(expectedRaw.readAllBytes(), actualRaw.readAllBytes());
+            }
+        }
+        KmzInfoVO kmzInfoVO = RouteFileUtils.parseKmz(target);
+        assertEquals(kmlInfo, kmzInfoVO.getKmlInfo());
+        assertEquals(wpmlInfo, kmzInfoVO.getWpmlInfo());
+    }
+
+    @Test
+    void concurrentBuildsWriteSeparateFiles(@TempDir Path dir) throws Exception {
+        RouteFileUtils routeFileUtils = new RouteFileUtils();
+        routeFileUtils.LOCAL_KMZ_FILE_PATH = dir.toString();
+        routeFileUtils.setCompression("store");
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        KmlInfo kmlInfo = RouteFileUtils.buildKml(kmlParams);
+        KmlInfo wpmlInfo = RouteFileUtils.buildWpml(kmlParams);
+
+        // 同名文件并发生成，各自得到独立的编号和完整的文件
+        List<CompletableFuture<KmzBuildVO>> futures = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> routeFileUtils.buildKmz("route", kmlInfo, wpmlInfo)))
+                .toList();
+        Set<String> buildIds = new HashSet<>();
+        for (CompletableFuture<KmzBuildVO> future : futures) {
+            KmzBuildVO kmzBuildVO = future.get();
+            assertTrue(buildIds.add(kmzBuildVO.getBuildId()));
+            assertEquals("route.kmz", kmzBuildVO.getFileName());
+            File file = routeFileUtils.findKmz(kmzBuildVO.getBuildId());
+            assertEquals(kmzBuildVO.getFilePath(), file.getPath());
+            assertEquals(kmzBuildVO.getSize(), file.length());
+            assertEquals(wpmlInfo, RouteFileUtils.parseKmz(file).getWpmlInfo());
+            // 临时文件已移走
+            assertEquals(1, file.getParentFile().list().length);
+        }
+        assertNull(routeFileUtils.findKmz("../" + futures.get(0).get().getBuildId()));
+    }
+
+    @Test
+    void identicalRequestsShareOneFile(@TempDir Path dir) throws Exception {
+        RouteFileUtils routeFileUtils = new RouteFileUtils();
+        routeFileUtils.LOCAL_KMZ_FILE_PATH = dir.toString();
+        routeFileUtils.setCompression("store");
+        ObjectMapper objectMapper = new ObjectMapper();
+        UavRouteReq first;
+        try (InputStream inputStream = getClass().getResourceAsStream("/route/waypoint.json")) {
+            first = objectMapper.readValue(inputStream, UavRouteReq.class);
+        }
+        first.setFileName("route");
+        // 重新反序列化得到的相同请求
+        UavRouteReq second = objectMapper.readValue(objectMapper.writeValueAsString(first), UavRouteReq.class);
+        String buildId = routeFileUtils.contentKey(first);
+        assertEquals(buildId, routeFileUtils.contentKey(second));
+        // 文件名不影响编号
+        second.setFileName("copy");
+        assertEquals(buildId, routeFileUtils.contentKey(second));
+        second.setGlobalHeight(second.getGlobalHeight() + 1);
+        assertNotEquals(buildId, routeFileUtils.contentKey(second));
+
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        KmzBuildVO built = routeFileUtils.buildKmz(buildId, first.getFileName(), kmlParams);
+        assertEquals(buildId, built.getBuildId());
+        // 按编号前缀分目录
+        assertEquals(dir.resolve(buildId.substring(0, 2)).resolve(buildId.substring(2, 4)).resolve(buildId).resolve("route.kmz").toString(), built.getFilePath());
+        File file = new File(built.getFilePath());
+        assertTrue(file.setLastModified(0));
+
+        // 已存在时不重新生成
+        assertEquals(built, routeFileUtils.buildKmz(buildId, first.getFileName(), kmlParams));
+        assertEquals(0, file.lastModified());
+
+        // 只有文件名不同时链接已生成的文件，不重新生成
+        KmzBuildVO renamed = routeFileUtils.buildKmz(buildId, "copy", kmlParams);
+        assertEquals(buildId, renamed.getBuildId());
+        assertEquals("copy.kmz", renamed.getFileName());
+        assertEquals(built.getSize(), renamed.getSize());
+        assertEquals(0, new File(renamed.getFilePath()).lastModified());
+
+        // 直接下载并保存：按请求的压缩策略计算编号，已存在时输出已有文件
+        String streamBuildId = routeFileUtils.contentKey(first, KmzCompression.parse("deflate:1"));
+        assertNotEquals(buildId, streamBuildId);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        KmzBuildVO persisted = routeFileUtils.buildKmz(streamBuildId, "route", kmlParams, streamed, KmzCompression.parse("deflate:1"));
+        assertEquals(streamBuildId, persisted.getBuildId());
+        assertEquals(persisted.getFilePath(), routeFileUtils.findKmz(streamBuildId).getPath());
+        assertArrayEquals(streamed.toByteArray(), Files.readAllBytes(Path.of(persisted.getFilePath())));
+        assertTrue(new File(persisted.getFilePath()).setLastModified(0));
+        ByteArrayOutputStream again = new ByteArrayOutputStream();
+        assertEquals(persisted, routeFileUtils.buildKmz(streamBuildId, "route", kmlParams, again, KmzCompression.parse("deflate:1")));
+        assertArrayEquals(streamed.toByteArray(), again.toByteArray());
+        assertEquals(0, new File(persisted.getFilePath()).lastModified());
+
+        // 输出配置变化时编号随之改变，配置只属于各自的实例
+        RouteFileUtils configured = new RouteFileUtils();
+        configured.setCompression("deflate:1");
+        assertNotEquals(buildId, configured.contentKey(first));
+        configured = new RouteFileUtils();
+        configured.setSpeedPrecision(2);
+        assertNotEquals(buildId, configured.contentKey(first));
+        assertEquals(buildId, routeFileUtils.contentKey(first));
+    }
+
+    /**
+     * 资源文件放在 kml 与 wpml 之间
+     */
+    private static File writeKmzWithResource(File file, KmlInfo kmlInfo, KmlInfo wpmlInfo) throws IOException {
+        try (ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(file)) {
+            putEntry(zipOutputStream, "wpmz/template.kml", KmlStreamReaderTests.toXml(kmlInfo));
+            putEntry(zipOutputStream, "wpmz/res/ply/reference.ply", "ply ply ply ply ply ply".getBytes(StandardCharsets.UTF_8));
+            putEntry(zipOutputStream, "wpmz/waylines.wpml", KmlStreamReaderTests.toXml(wpmlInfo));
+        }
+        return file;
+    }
+
+    private static void putEntry(ZipArchiveOutputStream zipOutputStream, String name, byte[] content) throws IOException {
+        zipOutputStream.putArchiveEntry(new ZipArchiveEntry(name));
+        zipOutputStream.write(content);
+        zipOutputStream.closeArchiveEntry();
+    }
+}
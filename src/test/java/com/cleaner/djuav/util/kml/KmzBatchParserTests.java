@@ -0,0 +1,67 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.domain.KmzBatchParseVO;
+import com.cleaner.djuav.domain.kml.KmlInfo;
+import com.cleaner.djuav.domain.kml.KmlParams;
+import com.cleaner.djuav.util.KmzBatchParser;
+import com.cleaner.djuav.util.KmzParseCache;
+import com.cleaner.djuav.util.RemoteFileClient;
+import com.cleaner.djuav.util.RouteFileUtils;
+import com.cleaner.djuav.util.ScratchFileManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KmzBatchParserTests {
+
+    @Test
+    void reportErrorsPerItem(@TempDir Path dir) throws Exception {
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        KmlInfo kmlInfo = RouteFileUtils.buildKml(kmlParams);
+        ByteArrayOutputStream kmz = new ByteArrayOutputStream();
+        RouteFileUtils.writeKmz(kmz, kmlInfo, RouteFileUtils.buildWpml(kmlParams));
+
+        ScratchFileManager scratchFileManager = new ScratchFileManager(dir.toString(), DataSize.ofMegabytes(10), Duration.ofSeconds(1));
+        RemoteFileClient remoteFileClient = new RemoteFileClient(Duration.ofSeconds(1), Duration.ofSeconds(1), DataSize.ofMegabytes(10));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<KmzBatchParseVO> results = new ArrayList<>();
+        try (KmzBatchParser batchParser = new KmzBatchParser(executor, 2, KmzParseScope.MISSION_CONFIG, remoteFileClient, new KmzParseCache(DataSize.ofBytes(0), null, 0, DataSize.ofBytes(0), "stax"), scratchFileManager, results::add)) {
+            for (int i = 0; i < 3; i++) {
+                batchParser.submitUpload("route" + i + ".kmz", new ByteArrayInputStream(kmz.toByteArray()));
+            }
+            batchParser.submitUpload("broken.kmz", new ByteArrayInputStream("not a zip".getBytes(StandardCharsets.UTF_8)));
+            batchParser.submitUrl("http://127.0.0.1:1/route.kmz");
+            batchParser.finish();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(5, results.size());
+        results.sort(Comparator.comparing(KmzBatchParseVO::getIndex));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("route" + i + ".kmz", results.get(i).getSource());
+            assertNull(results.get(i).getError());
+            assertEquals(kmlParams.getRoutePointList().size(), results.get(i).getKmzInfo().getWaypointCount());
+            assertEquals(kmlInfo.getDocument().getKmlMissionConfig(), results.get(i).getKmzInfo().getKmlInfo().getDocument().getKmlMissionConfig());
+        }
+        for (int i = 3; i < 5; i++) {
+            assertNull(results.get(i).getKmzInfo());
+            assertNotNull(results.get(i).getError());
+        }
+        // 解析完成后临时文件已删除
+        assertEquals(0, scratchFileManager.getUsage().getActiveFiles());
+    }
+}
@@ -0,0 +1,48 @@
+package com.cleaner.djuav.util.kml;
+
+import com.cleaner.djuav.constant.FileTypeConstants;
+import com.cleaner.djuav.domain.kml.*;
+import com.cleaner.djuav.util.RouteFileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutePlacemarkListTests {
+
+    @Test
+    void sameResultAsBuildingFromRoutePoints() throws Exception {
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        List<RoutePointInfo> routePointList = kmlParams.getRoutePointList();
+        assertEquals(routePointList, kmlParams.getRouteColumns().toRoutePointList());
+
+        // 逐个航点构建：首尾航点预先打上标记
+        routePointList.stream().min(Comparator.comparing(RoutePointInfo::getRoutePointIndex)).ifPresent(point -> point.setIsStartAndEndPoint(true));
+        routePointList.stream().max(Comparator.comparing(RoutePointInfo::getRoutePointIndex)).ifPresent(point -> point.setIsStartAndEndPoint(true));
+        for (String fileType : new String[]{FileTypeConstants.KML, FileTypeConstants.WPML}) {
+            List<KmlPlacemark> expected = new ArrayList<>();
+            for (RoutePointInfo routePointInfo : routePointList) {
+                expected.add(RouteFileUtils.buildKmlPlacemark(routePointInfo, kmlParams, fileType));
+            }
+            KmlInfo kmlInfo = FileTypeConstants.KML.equals(fileType) ? RouteFileUtils.buildKml(kmlParams) : RouteFileUtils.buildWpml(kmlParams);
+            List<KmlPlacemark> actual = kmlInfo.getDocument().getFolder().getPlacemarkList();
+            assertInstanceOf(RoutePlacemarkList.class, actual);
+            assertEquals(expected, actual, fileType);
+        }
+    }
+
+    @Test
+    void startAndEndPointsStopInWpml() throws Exception {
+        KmlParams kmlParams = KmlStreamReaderTests.loadKmlParams("waypoint");
+        kmlParams.getWaypointTurnReq().setWaypointTurnMode("coordinateTurn");
+        List<KmlPlacemark> placemarkList = RouteFileUtils.buildWpml(kmlParams).getDocument().getFolder().getPlacemarkList();
+
+        // 首尾航点不能协调转弯，改为直线飞行到点停
+        assertEquals("toPointAndStopWithDiscontinuityCurvature", placemarkList.get(0).getWaypointTurnParam().getWaypointTurnMode());
+        assertEquals("toPointAndStopWithDiscontinuityCurvature", placemarkList.get(placemarkList.size() - 1).getWaypointTurnParam().getWaypointTurnMode());
+        assertEquals("coordinateTurn", placemarkList.get(1).getWaypointTurnParam().getWaypointTurnMode());
+    }
+}